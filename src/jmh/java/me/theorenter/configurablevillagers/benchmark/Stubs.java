@@ -0,0 +1,152 @@
+package me.theorenter.configurablevillagers.benchmark;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Villager;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight stand-ins for the server objects used by the benchmarks.
+ * <p></p>
+ * Only the methods called by the plugin on the measured paths are implemented,
+ * every other method throws {@link UnsupportedOperationException}.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * @return The villager backed by a map {@link PersistentDataContainer}.
+     */
+    @NotNull
+    public static Villager villager(@NotNull final Villager.Type type, @NotNull final Villager.Profession profession, int level) {
+        UUID uuid = UUID.randomUUID();
+        PersistentDataContainer pdc = container();
+        return (Villager) Proxy.newProxyInstance(Villager.class.getClassLoader(), new Class<?>[]{Villager.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "getVillagerType":
+                            return type;
+                        case "getProfession":
+                            return profession;
+                        case "getVillagerLevel":
+                            return level;
+                        case "getPersistentDataContainer":
+                            return pdc;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "Villager{" + uuid + "}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @return The plugin with the data folder and a logger which only logs warnings.
+     */
+    @NotNull
+    public static Plugin plugin(@NotNull final File dataFolder) {
+        Logger logger = Logger.getLogger("ConfigurableVillagers-Benchmark");
+        logger.setLevel(Level.WARNING);
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getDataFolder":
+                            return dataFolder;
+                        case "getLogger":
+                            return logger;
+                        case "getName":
+                            return "ConfigurableVillagers";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "Plugin{" + dataFolder + "}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @return The player with the client locale.
+     */
+    @NotNull
+    public static Player player(@NotNull final Locale locale) {
+        UUID uuid = UUID.randomUUID();
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "locale":
+                            return locale;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "Player{" + uuid + ", " + locale + "}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @return The {@link PersistentDataContainer} which keeps values in a map without serializing them.
+     */
+    @NotNull
+    public static PersistentDataContainer container() {
+        Map<NamespacedKey, Object> values = new HashMap<>();
+        return (PersistentDataContainer) Proxy.newProxyInstance(PersistentDataContainer.class.getClassLoader(), new Class<?>[]{PersistentDataContainer.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "set":
+                            values.put((NamespacedKey) args[0], args[2]);
+                            return null;
+                        case "has":
+                            Object value = values.get((NamespacedKey) args[0]);
+                            if (args.length == 1 || value == null)
+                                return value != null;
+                            return ((PersistentDataType<?, ?>) args[1]).getComplexType().isInstance(value);
+                        case "get":
+                            return values.get((NamespacedKey) args[0]);
+                        case "getOrDefault":
+                            return values.getOrDefault((NamespacedKey) args[0], args[2]);
+                        case "remove":
+                            values.remove((NamespacedKey) args[0]);
+                            return null;
+                        case "getKeys":
+                            return new HashSet<>(values.keySet());
+                        case "isEmpty":
+                            return values.isEmpty();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "PersistentDataContainer" + values;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,192 @@
+package me.theorenter.configurablevillagers.benchmark;
+
+import me.theorenter.configurablevillagers.exceptions.CustomTradeKeyAlreadyExistsException;
+import me.theorenter.configurablevillagers.object.CustomTrade;
+import me.theorenter.configurablevillagers.object.VillagerWrapper;
+import me.theorenter.configurablevillagers.utils.TradeDataCodec;
+import me.theorenter.configurablevillagers.utils.TradeStorage;
+import org.bukkit.Material;
+import org.bukkit.entity.Villager;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trade selection and villager trade data paths of {@link TradeStorage}.
+ * <p></p>
+ * Run with the "jmh" Maven profile, e.g. {@code mvn -Pjmh test-compile exec:exec -Djmh.args="TradeStorageBenchmark -prof gc"}.
+ * Throughput is reported in ops/s, the gc profiler adds the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeStorageBenchmark {
+
+    private static final int VILLAGERS = 256;
+    private static final Villager.Profession[] PROFESSIONS;
+    private static final Villager.Type[] TYPES = Villager.Type.values();
+
+    static {
+        List<Villager.Profession> professions = new ArrayList<>();
+        for (Villager.Profession profession : Villager.Profession.values())
+            if (profession != Villager.Profession.NONE && profession != Villager.Profession.NITWIT)
+                professions.add(profession);
+        PROFESSIONS = professions.toArray(new Villager.Profession[0]);
+    }
+
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int tradeCount;
+
+    @Param({"0", "10", "40"})
+    public int ownedCount;
+
+    private CustomTrade[] trades;
+    /** Copies of the trades for {@link #register()}, so the ordinals of the trades of {@link #storage} are never reassigned. */
+    private CustomTrade[] unregisteredTrades;
+    private TradeStorage storage;
+    private Villager[] villagers;
+    private List<String>[] ownedTradeIDs;
+    private String[] newTradeIDs;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws CustomTradeKeyAlreadyExistsException {
+        Random random = new Random(42);
+        trades = new CustomTrade[tradeCount];
+        for (int i = 0; i < tradeCount; i++)
+            trades[i] = trade(random, "trade_" + i);
+        Random copyRandom = new Random(42);
+        unregisteredTrades = new CustomTrade[tradeCount];
+        for (int i = 0; i < tradeCount; i++)
+            unregisteredTrades[i] = trade(copyRandom, "trade_" + i);
+
+        storage = new TradeStorage();
+        for (CustomTrade trade : trades)
+            storage.register(trade);
+        storage.buildIndex();
+
+        villagers = new Villager[VILLAGERS];
+        ownedTradeIDs = new List[VILLAGERS];
+        newTradeIDs = new String[VILLAGERS];
+        for (int i = 0; i < VILLAGERS; i++) {
+            Villager villager = Stubs.villager(TYPES[random.nextInt(TYPES.length)], PROFESSIONS[random.nextInt(PROFESSIONS.length)], 1 + random.nextInt(5));
+            // Owned trades are picked the way the plugin picks them, so they are eligible for the villager
+            VillagerWrapper vw = new VillagerWrapper(villager, storage.getVillagerCache());
+            for (int j = 0; j < ownedCount; j++) {
+                CustomTrade trade = storage.getRandomAvailableTrade(villager);
+                if (trade == null)
+                    break;
+                vw.addTradeIdentifier(trade.getID());
+            }
+            villagers[i] = villager;
+            ownedTradeIDs[i] = new ArrayList<>(storage.getVillagerCache().get(villager).getIdentifiers());
+            newTradeIDs[i] = trades[random.nextInt(tradeCount)].getID();
+        }
+    }
+
+    private static CustomTrade trade(Random random, String ID) {
+        CustomTrade trade = new CustomTrade(ID, new ItemStack(Material.EMERALD), 12);
+        trade.addIngredient(new ItemStack(Material.WHEAT, 1 + random.nextInt(64)));
+
+        List<Villager.Profession> professions = new ArrayList<>();
+        for (Villager.Profession profession : PROFESSIONS)
+            if (random.nextInt(4) == 0) professions.add(profession);
+        if (professions.isEmpty()) professions.add(PROFESSIONS[random.nextInt(PROFESSIONS.length)]);
+        trade.setAvailableProfessions(professions);
+
+        List<Villager.Type> types = new ArrayList<>();
+        for (Villager.Type type : TYPES)
+            if (random.nextBoolean()) types.add(type);
+        if (types.isEmpty()) types.add(TYPES[random.nextInt(TYPES.length)]);
+        trade.setAvailableTypes(types);
+
+        List<Integer> levels = new ArrayList<>();
+        for (int level = 1; level <= 5; level++)
+            if (random.nextBoolean()) levels.add(level);
+        if (levels.isEmpty()) levels.add(1 + random.nextInt(5));
+        trade.setTradeLevels(levels);
+
+        trade.setWeight(1 + random.nextInt(10));
+        return trade;
+    }
+
+    private Villager nextVillager() {
+        next = (next + 1) & (VILLAGERS - 1);
+        return villagers[next];
+    }
+
+    /**
+     * Registration of all trades into an empty storage, including the index build.
+     * The trades are built for the trial and only registered by this benchmark, which assigns them the same ordinals every time.
+     */
+    @Benchmark
+    public TradeStorage register() throws CustomTradeKeyAlreadyExistsException {
+        TradeStorage storage = new TradeStorage();
+        for (CustomTrade trade : unregisteredTrades)
+            storage.register(trade);
+        storage.buildIndex();
+        return storage;
+    }
+
+    @Benchmark
+    public CustomTrade getRandomAvailableTrade() {
+        return storage.getRandomAvailableTrade(nextVillager());
+    }
+
+    /**
+     * Identifiers of the trades owned by a villager whose trades are cached.
+     */
+    @Benchmark
+    public List<String> getOwnedTradeIdentifiers() {
+        return storage.getVillagerCache().get(nextVillager()).getIdentifiers();
+    }
+
+    /**
+     * Identifiers of the trades owned by a villager read from its persistent data,
+     * e.g. after its chunk was loaded again.
+     */
+    @Benchmark
+    public List<String> getOwnedTradeIdentifiersUncached() {
+        Villager villager = nextVillager();
+        storage.getVillagerCache().invalidate(villager.getUniqueId());
+        return storage.getVillagerCache().get(villager).getIdentifiers();
+    }
+
+    /**
+     * Adding a trade to a villager with {@code ownedCount} cached trades, including the persistent data write.
+     */
+    @Benchmark
+    public void addTradeIdentifier(AddState state) {
+        new VillagerWrapper(state.villager, storage.getVillagerCache()).addTradeIdentifier(state.ID);
+    }
+
+    /**
+     * Restores the trade data of the next villager before each invocation of {@link #addTradeIdentifier},
+     * so every invocation adds a trade to a villager with the same number of owned trades.
+     */
+    @State(Scope.Thread)
+    public static class AddState {
+        private Villager villager;
+        private String ID;
+
+        @Setup(Level.Invocation)
+        public void reset(TradeStorageBenchmark benchmark) {
+            villager = benchmark.nextVillager();
+            ID = benchmark.newTradeIDs[benchmark.next];
+
+            new VillagerWrapper(villager, benchmark.storage.getVillagerCache()).clearTradeData();
+            villager.getPersistentDataContainer().set(TradeDataCodec.TRADES_KEY, PersistentDataType.LIST.strings(),
+                    new ArrayList<>(benchmark.ownedTradeIDs[benchmark.next]));
+            benchmark.storage.getVillagerCache().get(villager);
+        }
+    }
+}
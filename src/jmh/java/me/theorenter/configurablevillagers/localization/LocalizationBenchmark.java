@@ -0,0 +1,203 @@
+package me.theorenter.configurablevillagers.localization;
+
+import me.theorenter.configurablevillagers.benchmark.Stubs;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Lookup and rendering paths of {@link Localization} over synthetic bundles.
+ * <p></p>
+ * Every locale has a reference bundle with about 80% of the keys of the default one, so lookups
+ * go through the fallback chain, and the default locale has an override bundle with a few keys.
+ * The keys are picked at random, so with more keys than the template cache holds
+ * the results include {@link net.kyori.adventure.text.minimessage.MiniMessage} deserialization.
+ * <p></p>
+ * Run with the "jmh" Maven profile, e.g. {@code mvn -Pjmh test-compile exec:exec -Djmh.args="LocalizationBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizationBenchmark {
+
+    private static final String DEFAULT_LOCALE_TAG = "en_US";
+    private static final int LISTS = 16;
+    private static final int LIST_SIZE = 8;
+    private static final int PLAYERS = 64;
+    private static final int KEYS = 1024;
+    private static final String[] PLACEHOLDERS = {"Theorenter", "42"};
+
+    @Param({"100", "1000", "10000"})
+    public int keyCount;
+
+    @Param({"1", "5", "30"})
+    public int localeCount;
+
+    @Param({"false", "true"})
+    public boolean clientOriented;
+
+    private Path dataFolder;
+    private Localization localization;
+    private String[] keys;
+    private String[] listKeys;
+    private Locale[] locales;
+    private Player[] players;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        dataFolder = Files.createTempDirectory("cv-localization-benchmark");
+        File referenceDir = new File(dataFolder.toFile(), "reference");
+        File overrideDir = new File(dataFolder.toFile(), "override");
+        if (!referenceDir.mkdirs() || !overrideDir.mkdirs())
+            throw new IOException("Unable to create the localization directories in " + dataFolder);
+
+        locales = new Locale[localeCount];
+        locales[0] = new Locale("en", "US");
+        for (int i = 1; i < localeCount; i++)
+            locales[i] = new Locale("x" + (char) ('a' + i % 26), "Z" + (char) ('A' + i / 26));
+
+        for (Locale locale : locales)
+            writeBundle(new File(referenceDir, locale + ".properties"), locale.toString(),
+                    locale.toString().equals(DEFAULT_LOCALE_TAG) ? 1.0 : 0.8, random);
+        writeBundle(new File(overrideDir, DEFAULT_LOCALE_TAG + ".properties"), DEFAULT_LOCALE_TAG, 0.05, random);
+
+        localization = new Localization(Stubs.plugin(dataFolder.toFile()), clientOriented,
+                referenceDir, overrideDir, DEFAULT_LOCALE_TAG);
+
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            keys[i] = "message.board." + random.nextInt(keyCount);
+        listKeys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            listKeys[i] = "message.list." + random.nextInt(LISTS);
+        players = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++)
+            players[i] = Stubs.player(locales[random.nextInt(localeCount)]);
+    }
+
+    /**
+     * Writes the bundle with the share of the messages and every numbered list.
+     */
+    private void writeBundle(final File file, final String localeTag, double share, final Random random) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            out.write("locale.tag=" + localeTag + "\n");
+            out.write("locale.name=" + localeTag + "\n");
+            out.write("author=Benchmark\n");
+            for (int i = 0; i < keyCount; i++)
+                if (random.nextDouble() < share)
+                    out.write("message.board." + i + "=<gray>" + localeTag + " message <gold>" + i
+                            + "</gold> for <yellow>{0}</yellow>, <hover:show_text:\"<green>{1}\">hover</hover></gray>\n");
+            for (int i = 0; i < LISTS; i++)
+                for (int n = 1; n <= LIST_SIZE; n++)
+                    out.write("message.list." + i + "." + n + "=<white>" + n + ".</white> <gray>" + localeTag
+                            + " line of <aqua>{0}</aqua></gray>\n");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        localization.close();
+        try (Stream<Path> paths = Files.walk(dataFolder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private String nextKey() {
+        next = (next + 1) & (KEYS - 1);
+        return keys[next];
+    }
+
+    private String nextListKey() {
+        next = (next + 1) & (KEYS - 1);
+        return listKeys[next];
+    }
+
+    private Locale locale() {
+        return locales[next % localeCount];
+    }
+
+    private Player player() {
+        return players[next & (PLAYERS - 1)];
+    }
+
+    @Benchmark
+    public Component get() {
+        return localization.get(nextKey());
+    }
+
+    @Benchmark
+    public Component getWithPlaceholders() {
+        return localization.get(nextKey(), PLACEHOLDERS);
+    }
+
+    @Benchmark
+    public Component getByLocale() {
+        String key = nextKey();
+        return localization.get(key, locale());
+    }
+
+    @Benchmark
+    public Component getByLocaleWithPlaceholders() {
+        String key = nextKey();
+        return localization.get(key, locale(), PLACEHOLDERS);
+    }
+
+    @Benchmark
+    public Component getByPlayer() {
+        String key = nextKey();
+        return localization.get(key, player());
+    }
+
+    @Benchmark
+    public Component getByPlayerWithPlaceholders() {
+        String key = nextKey();
+        return localization.get(key, player(), PLACEHOLDERS);
+    }
+
+    /**
+     * Rendering a message which isn't cached, i.e. the full {@link net.kyori.adventure.text.minimessage.MiniMessage} deserialization.
+     */
+    @Benchmark
+    public Component getUncached() {
+        String key = nextKey();
+        localization.invalidateCache();
+        return localization.get(key, player(), PLACEHOLDERS);
+    }
+
+    @Benchmark
+    public List<Component> getNumberedList() {
+        return localization.getNumberedList(nextListKey());
+    }
+
+    @Benchmark
+    public List<Component> getNumberedListWithPlaceholders() {
+        return localization.getNumberedList(nextListKey(), PLACEHOLDERS);
+    }
+
+    @Benchmark
+    public List<Component> getNumberedListByLocale() {
+        String key = nextListKey();
+        return localization.getNumberedList(key, locale());
+    }
+
+    @Benchmark
+    public List<Component> getNumberedListByPlayerWithPlaceholders() {
+        String key = nextListKey();
+        return localization.getNumberedList(key, player(), PLACEHOLDERS);
+    }
+}
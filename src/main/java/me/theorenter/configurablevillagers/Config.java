@@ -14,8 +14,12 @@ public final class Config {
 
     public final String DEFAULT_LOCALIZATION;
     public final boolean LOCALIZATION_CLIENT_ORIENTED;
+    public final boolean LOCALIZATION_WATCH_OVERRIDE;
     public final boolean USE_CUSTOM_TRADES;
     public final boolean USE_VANILLA_CARTOGRAPHER_MAPS;
+    public final boolean COMPACT_TRADE_DATA;
+    public final boolean TRADE_LEDGER;
+    public final int METRICS_DUMP_INTERVAL;
     public final boolean MAJOR_POSITIVE_FIXED;
     public final int MAJOR_POSITIVE_VALUE;
     public final boolean MINOR_POSITIVE_FIXED;
@@ -38,8 +42,12 @@ public final class Config {
 
         DEFAULT_LOCALIZATION = fileConfig.getString("language.default-localization");
         LOCALIZATION_CLIENT_ORIENTED = fileConfig.getBoolean("language.client-based");
+        LOCALIZATION_WATCH_OVERRIDE = fileConfig.getBoolean("language.watch-override");
         USE_CUSTOM_TRADES = fileConfig.getBoolean("settings.use-custom-trades");
         USE_VANILLA_CARTOGRAPHER_MAPS = fileConfig.getBoolean("settings.use-vanilla-cartographer-maps");
+        COMPACT_TRADE_DATA = fileConfig.getBoolean("settings.compact-trade-data");
+        TRADE_LEDGER = fileConfig.getBoolean("settings.trade-ledger");
+        METRICS_DUMP_INTERVAL = fileConfig.getInt("settings.metrics-dump-interval");
         MAJOR_POSITIVE_FIXED = fileConfig.getBoolean("settings.curing.major-positive.fixed");
         MAJOR_POSITIVE_VALUE = fileConfig.getInt("settings.curing.major-positive.set");
         MINOR_POSITIVE_FIXED = fileConfig.getBoolean("settings.curing.minor-positive.fixed");
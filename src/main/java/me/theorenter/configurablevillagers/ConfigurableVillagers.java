@@ -1,23 +1,41 @@
 package me.theorenter.configurablevillagers;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
 import dev.jorel.commandapi.CommandAPI;
 import dev.jorel.commandapi.CommandAPIBukkitConfig;
 import me.theorenter.configurablevillagers.commands.ConfigurableVillagersCMD;
+import me.theorenter.configurablevillagers.listeners.EntityRemoveFromWorldListener;
 import me.theorenter.configurablevillagers.listeners.EntityTransformListener;
+import me.theorenter.configurablevillagers.listeners.PlayerLocaleListener;
 import me.theorenter.configurablevillagers.listeners.VillagerAcquireTradeEventListener;
 import me.theorenter.configurablevillagers.listeners.VillagerChangeProfessionListener;
 import me.theorenter.configurablevillagers.localization.Localization;
+import me.theorenter.configurablevillagers.utils.LoadProfile;
+import me.theorenter.configurablevillagers.utils.TradeLedger;
 import me.theorenter.configurablevillagers.utils.TradeLoader;
+import me.theorenter.configurablevillagers.utils.TradeMetrics;
 import me.theorenter.configurablevillagers.utils.TradeStorage;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.event.HandlerList;
+import org.bukkit.event.entity.EntityTransformEvent;
+import org.bukkit.event.entity.VillagerAcquireTradeEvent;
+import org.bukkit.event.entity.VillagerCareerChangeEvent;
+import org.bukkit.event.player.PlayerLocaleChangeEvent;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.RegisteredListener;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
 import java.util.logging.Logger;
 
 /**
@@ -25,22 +43,41 @@ import java.util.logging.Logger;
  */
 public final class ConfigurableVillagers extends JavaPlugin {
 
+    /**
+     * Lifecycle state of the plugin.
+     */
+    public enum State {
+        DISABLED, ENABLING, ENABLED, RELOADING
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.DISABLED);
+
+    private static final long LOCALIZATION_WATCH_DEBOUNCE_MILLIS = 500;
+
     // Config
-    private Config config;
+    private volatile Config config;
 
     // Localization
-    private Localization localization;
-
-    // Loaders
-    private TradeLoader tradeLoader;
+    private volatile Localization localization;
 
     // Storages
-    private TradeStorage tradeStorage;
+    private final AtomicReference<TradeStorage> tradeStorage = new AtomicReference<>();
+    private volatile TradeLedger tradeLedger;
+
+    // Metrics
+    private final TradeMetrics tradeMetrics = new TradeMetrics();
+    private BukkitTask metricsDumpTask;
+    private int metricsDumpInterval;
+
+    // Profile of the last startup or reload
+    private volatile LoadProfile loadProfile;
 
     // Listeners
     private final VillagerAcquireTradeEventListener villagerAcquireTradeEventListener = new VillagerAcquireTradeEventListener(this);
-    private final VillagerChangeProfessionListener villagerChangeProfessionListener = new VillagerChangeProfessionListener();
+    private final VillagerChangeProfessionListener villagerChangeProfessionListener = new VillagerChangeProfessionListener(this);
     private final EntityTransformListener entityTransformListener = new EntityTransformListener(this);
+    private final EntityRemoveFromWorldListener entityRemoveFromWorldListener = new EntityRemoveFromWorldListener(this);
+    private final PlayerLocaleListener playerLocaleListener = new PlayerLocaleListener(this);
     private Logger log;
 
     /**
@@ -58,21 +95,34 @@ public final class ConfigurableVillagers extends JavaPlugin {
     @SuppressWarnings("UnstableApiUsage")
     public void onEnable() {
         Bukkit.getLogger().info("================     ConfigurableVillagers     =================");
+        state.set(State.ENABLING);
         this.log = getLogger();
-        loadConfig();
-        loadLocalization();
-        if (config.USE_CUSTOM_TRADES) loadLoaders();
-        loadStorages();
-
-        // Load all trades
-        if (config.USE_CUSTOM_TRADES) tradeLoader.loadAll();
-
+        LoadProfile profile = new LoadProfile("startup");
+        long phaseStart = System.nanoTime();
+        try {
+            loadConfig();
+            profile.recordSince("Configuration", phaseStart);
+            loadLocalization(profile);
+            loadStorages(profile);
+        } catch (RuntimeException ex) {
+            // The plugin was disabled by the failed load step, so the state must not stay ENABLING
+            state.set(State.DISABLED);
+            throw ex;
+        }
+        updateTradeLedger(config);
+        updateMetricsDump(config);
 
         // Register listeners
+        phaseStart = System.nanoTime();
         registerListeners();
+        phaseStart = profile.recordSince("Listener registration", phaseStart);
 
-        // Commands
+        // Commands (registered once, they always use the current state of the plugin)
         registerCommands();
+        profile.recordSince("Command registration", phaseStart);
+        this.loadProfile = profile;
+        profile.log(log);
+        state.set(State.ENABLED);
         showStatus();
     }
 
@@ -81,28 +131,92 @@ public final class ConfigurableVillagers extends JavaPlugin {
      */
     @Override
     public void onDisable() {
-        if (config.USE_CUSTOM_TRADES) unregisterListeners();
+        state.set(State.DISABLED);
+        unregisterListeners();
+        if (metricsDumpTask != null) {
+            metricsDumpTask.cancel();
+            metricsDumpTask = null;
+        }
+        Localization localization = this.localization;
+        if (localization != null)
+            localization.close();
+        TradeLedger tradeLedger = this.tradeLedger;
+        this.tradeLedger = null;
+        if (tradeLedger != null)
+            tradeLedger.close();
+        CommandAPI.onDisable();
         showStatus();
     }
 
-    @SuppressWarnings("UnstableApiUsage")
-    public void onReload() {
-        Bukkit.getLogger().info("============     ConfigurableVillagers (reload)     ============");
-        this.log = getLogger();
-        loadConfig();
-        loadLocalization();
-        if (config.USE_CUSTOM_TRADES) loadLoaders();
-        loadStorages();
-
-        // Load all trades
-        if (config.USE_CUSTOM_TRADES) tradeLoader.loadAll();
+    /**
+     * Reloads the plugin without blocking the main thread.
+     * <p></p>
+     * Configuration, localization and trades are loaded asynchronously into new objects, which are
+     * published on the main thread at once. Until then, the previous ones stay in use.
+     * Listeners are unregistered and registered again exactly once when the new objects are published.
+     *
+     * @param callback Called on the main thread with the reload duration in milliseconds or -1 if the reload failed.
+     * @return False if the plugin isn't enabled or another reload is in progress. In this case the callback isn't called.
+     */
+    public boolean onReload(@NotNull final LongConsumer callback) {
+        if (!state.compareAndSet(State.ENABLED, State.RELOADING))
+            return false;
 
-        // Register listeners
-        registerListeners();
+        Bukkit.getLogger().info("============     ConfigurableVillagers (reload)     ============");
+        long start = System.nanoTime();
+
+        LoadProfile profile = new LoadProfile("reload");
+        getServer().getScheduler().runTaskAsynchronously(this, () -> {
+            Config newConfig;
+            Localization newLocalization;
+            TradeStorage newTradeStorage;
+            try {
+                long phaseStart = System.nanoTime();
+                newConfig = new Config(this);
+                profile.recordSince("Configuration", phaseStart);
+                log.info("Configuration successfully loaded.");
+                newLocalization = createLocalization(newConfig, profile);
+                log.info("Localization successfully loaded.");
+                newTradeStorage = createTradeStorage(newConfig, profile);
+            } catch (Exception ex) {
+                log.severe("An error occurred while reloading the plugin. The previous configuration is kept:");
+                ex.printStackTrace();
+                if (!isEnabled()) return;
+                getServer().getScheduler().runTask(this, () -> {
+                    if (state.compareAndSet(State.RELOADING, State.ENABLED))
+                        callback.accept(-1);
+                });
+                return;
+            }
 
-        // Commands
-        registerCommands();
-        showStatus();
+            if (!isEnabled()) return;
+            getServer().getScheduler().runTask(this, () -> {
+                if (state.get() != State.RELOADING)
+                    return;
+
+                Localization oldLocalization = this.localization;
+                this.config = newConfig;
+                this.localization = newLocalization;
+                this.tradeStorage.set(newTradeStorage);
+                oldLocalization.close();
+                watchLocalization(newLocalization, newConfig);
+                updateTradeLedger(newConfig);
+                updateMetricsDump(newConfig);
+
+                // Re-register listeners
+                long phaseStart = System.nanoTime();
+                unregisterListeners();
+                registerListeners();
+                profile.recordSince("Listener registration", phaseStart);
+                this.loadProfile = profile;
+                profile.log(log);
+
+                state.set(State.ENABLED);
+                showStatus();
+                callback.accept(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            });
+        });
+        return true;
     }
 
     /**
@@ -130,36 +244,23 @@ public final class ConfigurableVillagers extends JavaPlugin {
         }
     }
 
-    @SuppressWarnings({"UnstableApiUsage", "ConstantConditions"})
-    private void loadLocalization() {
+    @SuppressWarnings("UnstableApiUsage")
+    private void loadLocalization(@NotNull final LoadProfile profile) {
         try {
-            this.localization = new Localization(this,
-                    config.LOCALIZATION_CLIENT_ORIENTED,
-                    "settings" + File.separator + "localization",
-                    "reference",
-                    config.DEFAULT_LOCALIZATION);
+            this.localization = createLocalization(config, profile);
             log.info("Localization successfully loaded.");
-        } catch (IOException | InvalidConfigurationException ex) {
+            watchLocalization(localization, config);
+        } catch (IOException ex) {
             this.setEnabled(false);
             log.severe("An error occurred while loading the localization:");
             throw new RuntimeException(ex);
         }
     }
 
-    private void loadStorages() {
-        if (config.USE_CUSTOM_TRADES) {
-            this.tradeStorage = new TradeStorage();
-        } else this.tradeStorage = null;
-    }
-
     @SuppressWarnings("UnstableApiUsage")
-    private void loadLoaders() {
+    private void loadStorages(@NotNull final LoadProfile profile) {
         try {
-            if (config.USE_CUSTOM_TRADES) {
-                this.tradeLoader = new TradeLoader(this);
-            } else {
-                log.info("Custom trade offers were not loaded because they are disabled in configurations (\"settings.use-custom-trades\" value in configuration.yml)");
-            }
+            this.tradeStorage.set(createTradeStorage(config, profile));
             log.info("Loaders successfully loaded.");
         } catch (IOException | InvalidConfigurationException ex) {
             this.setEnabled(false);
@@ -168,12 +269,121 @@ public final class ConfigurableVillagers extends JavaPlugin {
         }
     }
 
+    /**
+     * Extracts the reference localization and loads the localization.
+     *
+     * @param config The configuration.
+     * @param profile The profile to which the time of the extraction and of the bundle loading is recorded.
+     * @return The {@link Localization}.
+     */
+    @NotNull
+    @SuppressWarnings("ConstantConditions")
+    private Localization createLocalization(@NotNull final Config config, @NotNull final LoadProfile profile) throws IOException {
+        return Localization.load(this,
+                config.LOCALIZATION_CLIENT_ORIENTED,
+                "settings" + File.separator + "localization",
+                "reference",
+                config.DEFAULT_LOCALIZATION,
+                profile);
+    }
+
+    /**
+     * Starts watching the override localization files if it's enabled in the configuration.
+     *
+     * @param localization The localization.
+     * @param config The configuration.
+     */
+    private void watchLocalization(@NotNull final Localization localization, @NotNull final Config config) {
+        if (!config.LOCALIZATION_WATCH_OVERRIDE)
+            return;
+        try {
+            localization.watchOverride(LOCALIZATION_WATCH_DEBOUNCE_MILLIS);
+        } catch (IOException ex) {
+            log.warning("Override localization files can't be watched, changes will be applied after the reload: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Opens or closes the trade ledger according to the configuration.
+     * The ledger is detached and closed asynchronously, because closing waits for the queued writes.
+     *
+     * @param config The configuration.
+     */
+    private void updateTradeLedger(@NotNull final Config config) {
+        if (config.TRADE_LEDGER && tradeLedger == null) {
+            tradeLedger = new TradeLedger(new File(getDataFolder(), "trade-ledger.db"), log);
+            log.info("Trade ledger successfully opened.");
+        } else if (!config.TRADE_LEDGER && tradeLedger != null) {
+            TradeLedger oldTradeLedger = tradeLedger;
+            tradeLedger = null;
+            getServer().getScheduler().runTaskAsynchronously(this, () -> {
+                oldTradeLedger.close();
+                log.info("Trade ledger successfully closed.");
+            });
+        }
+    }
+
+    /**
+     * Starts, restarts or stops the periodic dump of the trade metrics according to the configuration.
+     *
+     * @param config The configuration.
+     */
+    private void updateMetricsDump(@NotNull final Config config) {
+        int interval = Math.max(0, config.METRICS_DUMP_INTERVAL);
+        if (interval == metricsDumpInterval && (metricsDumpTask != null) == (interval > 0))
+            return;
+
+        if (metricsDumpTask != null) {
+            metricsDumpTask.cancel();
+            metricsDumpTask = null;
+        }
+        metricsDumpInterval = interval;
+        if (interval == 0)
+            return;
+
+        File file = new File(getDataFolder(), "metrics.csv");
+        long ticks = interval * 20L;
+        metricsDumpTask = getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            try {
+                tradeMetrics.appendCsv(file);
+            } catch (IOException ex) {
+                log.warning("Unable to write the trade metrics to \"" + file.getName() + "\": " + ex.getMessage());
+            }
+        }, ticks, ticks);
+        log.info("Trade metrics are written to \"" + file.getName() + "\" every " + interval + " seconds.");
+    }
+
+    /**
+     * Creates a new trade storage and loads all trades into it.
+     *
+     * @param config The configuration.
+     * @param profile The profile to which the time of each loading stage is recorded.
+     * @return The {@link TradeStorage} or null if custom trades are disabled.
+     */
+    @Nullable
+    private TradeStorage createTradeStorage(@NotNull final Config config, @NotNull final LoadProfile profile) throws IOException, InvalidConfigurationException {
+        if (!config.USE_CUSTOM_TRADES) {
+            log.info("Custom trade offers were not loaded because they are disabled in configurations (\"settings.use-custom-trades\" value in configuration.yml)");
+            return null;
+        }
+
+        TradeStorage storage = new TradeStorage(config.COMPACT_TRADE_DATA, log);
+        storage.setMetrics(tradeMetrics);
+        long phaseStart = System.nanoTime();
+        TradeLoader loader = new TradeLoader(this);
+        profile.recordSince("trades.yml read", phaseStart);
+        loader.loadAll(storage, profile);
+        return storage;
+    }
+
     private void registerListeners() {
         PluginManager pm = this.getServer().getPluginManager();
 
         pm.registerEvents(villagerAcquireTradeEventListener, this);
         pm.registerEvents(villagerChangeProfessionListener, this);
         pm.registerEvents(entityTransformListener, this);
+        pm.registerEvents(entityRemoveFromWorldListener, this);
+        pm.registerEvents(playerLocaleListener, this);
         log.info("Listeners successfully registered.");
     }
 
@@ -188,9 +398,39 @@ public final class ConfigurableVillagers extends JavaPlugin {
         HandlerList.unregisterAll(villagerAcquireTradeEventListener);
         HandlerList.unregisterAll(villagerChangeProfessionListener);
         HandlerList.unregisterAll(entityTransformListener);
+        HandlerList.unregisterAll(entityRemoveFromWorldListener);
+        HandlerList.unregisterAll(playerLocaleListener);
         log.info("Listeners successfully unregistered.");
     }
 
+    /**
+     * @return The number of handlers registered by this plugin for each event it listens to.
+     */
+    @NotNull
+    public Map<String, Integer> getHandlerCounts() {
+        Map<String, HandlerList> handlerLists = new LinkedHashMap<>();
+        handlerLists.put("VillagerAcquireTradeEvent", VillagerAcquireTradeEvent.getHandlerList());
+        handlerLists.put("VillagerCareerChangeEvent", VillagerCareerChangeEvent.getHandlerList());
+        handlerLists.put("EntityTransformEvent", EntityTransformEvent.getHandlerList());
+        handlerLists.put("EntityRemoveFromWorldEvent", EntityRemoveFromWorldEvent.getHandlerList());
+        handlerLists.put("PlayerLocaleChangeEvent", PlayerLocaleChangeEvent.getHandlerList());
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        handlerLists.forEach((event, handlerList) -> {
+            int count = 0;
+            for (RegisteredListener listener : handlerList.getRegisteredListeners())
+                if (listener.getPlugin() == this)
+                    count++;
+            counts.put(event, count);
+        });
+        return counts;
+    }
+
+    @NotNull
+    public State getState() {
+        return state.get();
+    }
+
     @NotNull
     public Config getCfg() {
         return this.config;
@@ -201,8 +441,35 @@ public final class ConfigurableVillagers extends JavaPlugin {
         return localization;
     }
 
-    @NotNull
+    /**
+     * @return The trade storage or null if custom trades are disabled.
+     */
+    @Nullable
     public TradeStorage getTradeStorage() {
-        return tradeStorage;
+        return tradeStorage.get();
+    }
+
+    /**
+     * @return The runtime metrics of the trade acquisition.
+     */
+    @NotNull
+    public TradeMetrics getTradeMetrics() {
+        return tradeMetrics;
+    }
+
+    /**
+     * @return The timings of the last startup or reload or null if the plugin wasn't loaded yet.
+     */
+    @Nullable
+    public LoadProfile getLoadProfile() {
+        return loadProfile;
+    }
+
+    /**
+     * @return The trade ledger or null if it's disabled in the configuration.
+     */
+    @Nullable
+    public TradeLedger getTradeLedger() {
+        return tradeLedger;
     }
 }
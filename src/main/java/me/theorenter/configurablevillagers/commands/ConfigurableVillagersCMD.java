@@ -7,6 +7,9 @@ import dev.jorel.commandapi.arguments.UUIDArgument;
 import me.theorenter.configurablevillagers.ConfigurableVillagers;
 import me.theorenter.configurablevillagers.object.CustomTrade;
 import me.theorenter.configurablevillagers.object.VillagerWrapper;
+import me.theorenter.configurablevillagers.utils.LoadProfile;
+import me.theorenter.configurablevillagers.utils.TradeLedger;
+import me.theorenter.configurablevillagers.utils.TradeStorage;
 import net.kyori.adventure.text.Component;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.entity.Entity;
@@ -17,6 +20,7 @@ import org.bukkit.inventory.MerchantRecipe;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -65,46 +69,59 @@ public final class ConfigurableVillagersCMD {
                         Player p = (Player) executor;
 
                         if (args.count() < 1) {
-                            Component msg = plugin.getLoc().get("message.error.invalid_arguments_count", p.locale());
+                            Component msg = plugin.getLoc().get("message.error.invalid_arguments_count", p);
                             p.sendMessage(msg);
                             return;
                         }
                         Entity e = plugin.getServer().getEntity((UUID) args.get(0));
 
                         if (e == null) {
-                            Component msg = plugin.getLoc().get("message.error.entity_with_specified_id_doesn't_exists", p.locale());
+                            Component msg = plugin.getLoc().get("message.error.entity_with_specified_id_doesn't_exists", p);
                             p.sendMessage(msg);
                             return;
                         }
 
                         if (!(e instanceof Villager)) {
-                            Component msg = plugin.getLoc().get("message.error.entity_not_a_villager", p.locale());
+                            Component msg = plugin.getLoc().get("message.error.entity_not_a_villager", p);
+                            p.sendMessage(msg);
+                            return;
+                        }
+
+                        TradeStorage tradeStorage = plugin.getTradeStorage();
+                        if (tradeStorage == null) {
+                            Component msg = plugin.getLoc().get("message.error.custom_trades_disabled", p);
                             p.sendMessage(msg);
                             return;
                         }
 
                         Villager v = (Villager) e;
-                        VillagerWrapper vw = new VillagerWrapper(v);
+                        VillagerWrapper vw = new VillagerWrapper(v, tradeStorage.getVillagerCache());
                         vw.clearTradeData();
                         List<MerchantRecipe> rerolledRecipes = new ArrayList<>();
 
                         if (v.getRecipeCount() == 0) {
-                            Component msg = plugin.getLoc().get("message.error.no_trades", p.locale());
+                            Component msg = plugin.getLoc().get("message.error.no_trades", p);
                             p.sendMessage(msg);
                             return;
                         }
 
+                        TradeLedger ledger = plugin.getTradeLedger();
+                        if (ledger != null)
+                            ledger.forget(v.getUniqueId());
+
                         for (int i = 0; i < v.getVillagerLevel()*2; i++) {
                             int pseudoLevel = (int) Math.ceil((1.0 + i) / 2);
-                            CustomTrade ct = plugin.getTradeStorage().getRandomAvailableTrade(v, pseudoLevel);
+                            CustomTrade ct = tradeStorage.getRandomAvailableTrade(v, pseudoLevel);
                             if (ct != null) {
-                                rerolledRecipes.add(ct.getRecipe());
+                                rerolledRecipes.add(ct.newRecipe());
                                 vw.addTradeIdentifier(ct.getID());
+                                if (ledger != null)
+                                    ledger.record(v.getUniqueId(), ct.getID(), pseudoLevel);
                             }
                         }
                         v.setRecipes(rerolledRecipes);
 
-                        Component msg = plugin.getLoc().get("message.notification.trades_successfully_rerolled", p.locale());
+                        Component msg = plugin.getLoc().get("message.notification.trades_successfully_rerolled", p);
                         p.sendMessage(msg);
                     } else {
                         executor.sendMessage("This command only for players!");
@@ -116,19 +133,97 @@ public final class ConfigurableVillagersCMD {
                 .executesPlayer(executor -> {
                     Player p = executor.sender();
                     plugin.getLogger().info(p.getName() + " (" + (p).getUniqueId() + ") reloads the plugin!");
-                    plugin.onReload();
-
-                    Component msg;
-                    if (plugin.isEnabled()) {
-                        msg = plugin.getLoc().get("message.notification.plugin_successfully_reload", p.locale());
-                    } else {
-                        msg = plugin.getLoc().get("message.error.invalid_reload", p.locale());
+                    boolean started = plugin.onReload(elapsed -> {
+                        Component msg;
+                        if (elapsed >= 0) {
+                            msg = plugin.getLoc().get("message.notification.plugin_successfully_reload", p, String.valueOf(elapsed));
+                        } else {
+                            msg = plugin.getLoc().get("message.error.invalid_reload", p);
+                        }
+                        p.sendMessage(msg);
+                    });
+                    if (!started) {
+                        Component msg = plugin.getLoc().get("message.error.reload_in_progress", p);
+                        p.sendMessage(msg);
                     }
-                    p.sendMessage(msg);
                 })
                 .executesConsole(sender -> {
-                    sender.sender().sendMessage("Start plugin reloading...");
-                    plugin.onReload();
+                    ConsoleCommandSender console = sender.sender();
+                    boolean started = plugin.onReload(elapsed -> {
+                        if (elapsed >= 0)
+                            console.sendMessage("Plugin successfully reloaded in " + elapsed + " ms.");
+                        else
+                            console.sendMessage("An error occurred while reloading the plugin. The previous configuration is kept.");
+                    });
+                    if (started)
+                        console.sendMessage("Start plugin reloading...");
+                    else
+                        console.sendMessage("The plugin is already reloading!");
+                });
+
+        CommandAPICommand cvDebugHandlers = new CommandAPICommand("handlers")
+                .withPermission("configurablevillagers.command.configurablevillagers.debug")
+                .executes((executor, args) -> {
+                    executor.sendMessage("ConfigurableVillagers – State: " + plugin.getState());
+                    plugin.getHandlerCounts().forEach((event, count) ->
+                            executor.sendMessage(event + ": " + count + " handler(s)"));
+                });
+
+        CommandAPICommand cvDebugLocalization = new CommandAPICommand("localization")
+                .withPermission("configurablevillagers.command.configurablevillagers.debug")
+                .executes((executor, args) -> {
+                    executor.sendMessage("ConfigurableVillagers – Localization cache: " + plugin.getLoc().getCacheStats());
+                });
+
+        CommandAPICommand cvDebug = new CommandAPICommand("debug")
+                .withPermission("configurablevillagers.command.configurablevillagers.debug")
+                .withSubcommand(cvDebugHandlers)
+                .withSubcommand(cvDebugLocalization);
+
+        CommandAPICommand cvStatsStartup = new CommandAPICommand("startup")
+                .withPermission("configurablevillagers.command.configurablevillagers.stats")
+                .executes((executor, args) -> {
+                    LoadProfile profile = plugin.getLoadProfile();
+                    if (profile == null) {
+                        executor.sendMessage("ConfigurableVillagers – The plugin wasn't loaded yet.");
+                        return;
+                    }
+                    executor.sendMessage("ConfigurableVillagers – " + new Date(profile.getStartedAt()));
+                    profile.getReport().forEach(executor::sendMessage);
+                });
+
+        CommandAPICommand cvStats = new CommandAPICommand("stats")
+                .withPermission("configurablevillagers.command.configurablevillagers.stats")
+                .withSubcommand(cvStatsStartup)
+                .executes((executor, args) -> {
+                    plugin.getTradeMetrics().getReport().forEach(executor::sendMessage);
+                });
+
+        CommandAPICommand cvLedger = new CommandAPICommand("ledger")
+                .withPermission("configurablevillagers.command.configurablevillagers.ledger")
+                .withArguments(entIdentifierDynamicArg)
+                .executes((executor, args) -> {
+                    TradeLedger ledger = plugin.getTradeLedger();
+                    if (ledger == null) {
+                        executor.sendMessage("ConfigurableVillagers – The trade ledger is disabled (\"settings.trade-ledger\" value in configuration.yml).");
+                        return;
+                    }
+
+                    // The villager doesn't have to be loaded, its trades are read from the ledger
+                    UUID villager = (UUID) args.get(0);
+                    ledger.getEntries(villager).whenComplete((entries, ex) -> {
+                        if (!plugin.isEnabled()) return;
+                        plugin.getServer().getScheduler().runTask(plugin, () -> {
+                            if (ex != null) {
+                                executor.sendMessage("ConfigurableVillagers – Unable to read the trade ledger: " + ex.getMessage());
+                                return;
+                            }
+                            executor.sendMessage("ConfigurableVillagers – Recorded trades of " + villager + ": " + entries.size());
+                            for (TradeLedger.Entry entry : entries)
+                                executor.sendMessage("  " + new Date(entry.getAcquiredAt()) + " – " + entry.getTradeID()
+                                        + " (level " + entry.getLevel() + ")");
+                        });
+                    });
                 });
 
         // Main commands.
@@ -137,9 +232,12 @@ public final class ConfigurableVillagersCMD {
                 .withPermission("configurablevillagers.command.configurablevillagers.help")
                 .withSubcommand(cvReload)
                 .withSubcommand(cvReroll)
+                .withSubcommand(cvDebug)
+                .withSubcommand(cvStats)
+                .withSubcommand(cvLedger)
                 .executesPlayer(playerExecutor -> {
                     Player p = playerExecutor.sender();
-                    List<Component> board = plugin.getLoc().getNumberedList("message.board.cv.help", p.locale());
+                    List<Component> board = plugin.getLoc().getNumberedList("message.board.cv.help", p);
                     board.forEach(p::sendMessage);
                 })
                 .executesConsole(consoleExecutor -> {
@@ -148,6 +246,11 @@ public final class ConfigurableVillagersCMD {
                     console.sendMessage("ConfigurableVillagers – Help");
                     console.sendMessage("/cv reload – Reloads the plugin;");
                     console.sendMessage("/cv reroll <villager_UUID> – Rerolls villager trades;");
+                    console.sendMessage("/cv debug handlers – Shows the number of registered event handlers;");
+                    console.sendMessage("/cv debug localization – Shows the statistics of the localization cache;");
+                    console.sendMessage("/cv stats – Shows the metrics of the trade acquisition;");
+                    console.sendMessage("/cv stats startup – Shows the timings of the last plugin startup or reload;");
+                    console.sendMessage("/cv ledger <villager_UUID> – Shows the trades recorded in the trade ledger for the villager;");
                 })
                 .register(plugin);
     }
@@ -0,0 +1,33 @@
+package me.theorenter.configurablevillagers.listeners;
+
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import me.theorenter.configurablevillagers.ConfigurableVillagers;
+import me.theorenter.configurablevillagers.utils.TradeStorage;
+import org.bukkit.entity.Villager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Evicts villagers from the {@link me.theorenter.configurablevillagers.utils.VillagerTradeCache}
+ * when they die or their chunk is unloaded.
+ */
+public final class EntityRemoveFromWorldListener implements Listener {
+
+    private final ConfigurableVillagers plugin;
+
+    public EntityRemoveFromWorldListener(@NotNull final ConfigurableVillagers plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemoveFromWorld(@NotNull final EntityRemoveFromWorldEvent e) {
+        if (!(e.getEntity() instanceof Villager))
+            return;
+
+        TradeStorage tradeStorage = plugin.getTradeStorage();
+        if (tradeStorage != null)
+            tradeStorage.getVillagerCache().invalidate(e.getEntity().getUniqueId());
+    }
+}
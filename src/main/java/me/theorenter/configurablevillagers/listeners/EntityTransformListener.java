@@ -3,18 +3,15 @@ package me.theorenter.configurablevillagers.listeners;
 import com.destroystokyo.paper.entity.villager.Reputation;
 import com.destroystokyo.paper.entity.villager.ReputationType;
 import me.theorenter.configurablevillagers.ConfigurableVillagers;
-import org.bukkit.NamespacedKey;
+import me.theorenter.configurablevillagers.utils.TradeDataCodec;
 import org.bukkit.entity.Villager;
 import org.bukkit.entity.ZombieVillager;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityTransformEvent;
-import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
 import java.util.UUID;
 
 public final class EntityTransformListener implements Listener {
@@ -30,25 +27,17 @@ public final class EntityTransformListener implements Listener {
         if (e.getEntity() instanceof Villager) {
             Villager villager = (Villager) e.getEntity();
 
-            NamespacedKey NSK = new NamespacedKey("configurablevillagers", "trades");
-            List<String> tradeIdentifiers = villager.getPersistentDataContainer().get(NSK, PersistentDataType.LIST.strings());
-            if (tradeIdentifiers == null) {
-                return;
-            }
-            e.getTransformedEntity().getPersistentDataContainer().set(NSK, PersistentDataType.LIST.strings(), tradeIdentifiers);
+            TradeDataCodec.copy(villager.getPersistentDataContainer(), e.getTransformedEntity().getPersistentDataContainer());
             return;
         }
 
         if (e.getEntity() instanceof ZombieVillager) {
             ZombieVillager z = (ZombieVillager) e.getEntity();
 
-            NamespacedKey NSK = new NamespacedKey("configurablevillagers", "trades");
-            List<String> tradeIdentifiers = z.getPersistentDataContainer().get(NSK, PersistentDataType.LIST.strings());
-            if (tradeIdentifiers == null) {
+            if (!z.getPersistentDataContainer().has(TradeDataCodec.TRADES_KEY)) {
                 return;
             }
-            PersistentDataContainer PDC = e.getTransformedEntity().getPersistentDataContainer();
-            PDC.set(NSK, PersistentDataType.LIST.strings(), tradeIdentifiers);
+            TradeDataCodec.copy(z.getPersistentDataContainer(), e.getTransformedEntity().getPersistentDataContainer());
 
             Villager villager = (Villager) e.getTransformedEntity();
 
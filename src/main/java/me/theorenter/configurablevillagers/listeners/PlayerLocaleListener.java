@@ -0,0 +1,38 @@
+package me.theorenter.configurablevillagers.listeners;
+
+import me.theorenter.configurablevillagers.ConfigurableVillagers;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLocaleChangeEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps the localization resolved for each online player in
+ * {@link me.theorenter.configurablevillagers.localization.Localization}.
+ */
+public final class PlayerLocaleListener implements Listener {
+
+    private final ConfigurableVillagers plugin;
+
+    public PlayerLocaleListener(@NotNull final ConfigurableVillagers plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(@NotNull final PlayerJoinEvent e) {
+        plugin.getLoc().updatePlayerLocale(e.getPlayer(), e.getPlayer().locale());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLocaleChange(@NotNull final PlayerLocaleChangeEvent e) {
+        plugin.getLoc().updatePlayerLocale(e.getPlayer(), e.locale());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(@NotNull final PlayerQuitEvent e) {
+        plugin.getLoc().forgetPlayer(e.getPlayer().getUniqueId());
+    }
+}
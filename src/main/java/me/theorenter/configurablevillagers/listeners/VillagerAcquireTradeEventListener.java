@@ -3,6 +3,8 @@ package me.theorenter.configurablevillagers.listeners;
 import me.theorenter.configurablevillagers.ConfigurableVillagers;
 import me.theorenter.configurablevillagers.object.CustomTrade;
 import me.theorenter.configurablevillagers.object.VillagerWrapper;
+import me.theorenter.configurablevillagers.utils.TradeLedger;
+import me.theorenter.configurablevillagers.utils.TradeMetrics;
 import me.theorenter.configurablevillagers.utils.TradeStorage;
 import org.bukkit.Material;
 import org.bukkit.entity.Villager;
@@ -23,7 +25,16 @@ public final class VillagerAcquireTradeEventListener implements Listener {
 
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onVillagerAcquireTrade(@NotNull final VillagerAcquireTradeEvent e) {
+        TradeMetrics metrics = plugin.getTradeMetrics();
+        long start = System.nanoTime();
+        try {
+            handle(e, metrics);
+        } finally {
+            metrics.recordEvent(System.nanoTime() - start);
+        }
+    }
 
+    private void handle(@NotNull final VillagerAcquireTradeEvent e, @NotNull final TradeMetrics metrics) {
         if (e.getEntity() instanceof WanderingTrader)
             return;
 
@@ -35,16 +46,32 @@ public final class VillagerAcquireTradeEventListener implements Listener {
         if (villager instanceof WanderingTrader)
             return;
 
-        VillagerWrapper vw = new VillagerWrapper(villager);
-
         TradeStorage tradeStorage = plugin.getTradeStorage();
+        if (tradeStorage == null)
+            return;
+
+        // Villagers which own every eligible trade (e.g. on trading halls) are cancelled without picking a trade
+        if (tradeStorage.isExhausted(villager)) {
+            e.setCancelled(true);
+            metrics.recordCancelled();
+            return;
+        }
+
+        VillagerWrapper vw = new VillagerWrapper(villager, tradeStorage.getVillagerCache());
+
         CustomTrade trade = tradeStorage.getRandomAvailableTrade(villager);
 
         if (trade != null) {
-            e.setRecipe(trade.getRecipe());
+            e.setRecipe(trade.newRecipe());
             vw.addTradeIdentifier(trade.getID());
+
+            TradeLedger ledger = plugin.getTradeLedger();
+            if (ledger != null)
+                ledger.record(villager.getUniqueId(), trade.getID(), villager.getVillagerLevel());
+            metrics.recordAssigned();
         } else {
             e.setCancelled(true);
+            metrics.recordCancelled();
         }
     }
 }
@@ -1,6 +1,8 @@
 package me.theorenter.configurablevillagers.listeners;
 
+import me.theorenter.configurablevillagers.ConfigurableVillagers;
 import me.theorenter.configurablevillagers.object.VillagerWrapper;
+import me.theorenter.configurablevillagers.utils.TradeStorage;
 import org.bukkit.entity.Villager;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -10,14 +12,19 @@ import org.jetbrains.annotations.NotNull;
 
 public final class VillagerChangeProfessionListener implements Listener {
 
-    public VillagerChangeProfessionListener() {
+    private final ConfigurableVillagers plugin;
+
+    public VillagerChangeProfessionListener(@NotNull final ConfigurableVillagers plugin) {
+        this.plugin = plugin;
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void onVillagerChangeProfession(@NotNull final VillagerCareerChangeEvent e) {
         Villager.Profession profession = e.getProfession();
-        if (profession == Villager.Profession.NITWIT || profession == Villager.Profession.NONE)
-            new VillagerWrapper(e.getEntity()).clearTradeData();
+        if (profession == Villager.Profession.NITWIT || profession == Villager.Profession.NONE) {
+            TradeStorage tradeStorage = plugin.getTradeStorage();
+            new VillagerWrapper(e.getEntity(), tradeStorage != null ? tradeStorage.getVillagerCache() : null).clearTradeData();
+        }
 
     }
 }
@@ -0,0 +1,54 @@
+package me.theorenter.configurablevillagers.localization;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The merged messages of one locale with the fallback chain already applied.
+ */
+final class LocaleTable {
+
+    private final String tag;
+    private final Map<String, String> messages;
+    private final Map<String, NumberedList> lists;
+
+    /**
+     * @param tag The locale tag of the table.
+     * @param messages The merged messages of the locale.
+     */
+    LocaleTable(@NotNull final String tag, @NotNull final Map<String, String> messages) {
+        this.tag = tag;
+        this.messages = Collections.unmodifiableMap(messages);
+        this.lists = NumberedList.index(messages);
+    }
+
+    /**
+     * @return The locale tag of the table.
+     */
+    @NotNull
+    String getTag() {
+        return tag;
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @return The localized message or null if the table doesn't contain it.
+     */
+    @Nullable
+    String get(@NotNull final String key) {
+        return messages.get(key);
+    }
+
+    /**
+     * @param key The key of the numbered list.
+     * @return The indexed numbered list or {@link NumberedList#EMPTY} if the table doesn't contain it.
+     */
+    @NotNull
+    NumberedList getList(@NotNull final String key) {
+        NumberedList list = lists.get(key);
+        return list != null ? list : NumberedList.EMPTY;
+    }
+}
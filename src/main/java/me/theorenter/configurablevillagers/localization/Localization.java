@@ -1,17 +1,24 @@
 package me.theorenter.configurablevillagers.localization;
 
+import me.theorenter.configurablevillagers.utils.LoadProfile;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.MessageFormat;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -20,10 +27,24 @@ import java.util.zip.ZipFile;
  */
 public final class Localization {
 
-    private final Map<String, LocalizationBundle> REFERENCE_LOCALIZATION_MAP = new HashMap<>();
-    private final Map<String, LocalizationBundle> OVERRIDE_LOCALIZATION_MAP = new HashMap<>();
+    private static final String BUNDLE_EXTENSION = ".properties";
+
+    /** Reference localization files by their locale tag (the file name without extension), loaded on demand. */
+    private final Map<String, File> REFERENCE_FILES = new HashMap<>();
+    private final Map<String, LocalizationBundle> REFERENCE_LOCALIZATION_MAP = new ConcurrentHashMap<>();
+    private final Map<String, LocalizationBundle> OVERRIDE_LOCALIZATION_MAP = new ConcurrentHashMap<>();
+    /** Locale tags of the override localization files by their file names. */
+    private final Map<String, String> OVERRIDE_FILES = new ConcurrentHashMap<>();
+
+    /** Tables built from the current bundles, replaced at once when an override bundle changes. */
+    private volatile Tables tables;
+    private OverrideWatcher watcher;
+
+    private static final int TEMPLATE_CACHE_CAPACITY = 1024;
+    private final TemplateCache TEMPLATE_CACHE = new TemplateCache(TEMPLATE_CACHE_CAPACITY);
 
     private final String defaultLocaleTag;
+    private final File overrideDir;
 
     private final Plugin plugin;
     private final boolean isClientOriented;
@@ -37,39 +58,129 @@ public final class Localization {
      * @param dir The directory name of the localization files.
      * @param defaultLocaleTag The tag of the default plugin localization.
      */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public Localization(@NotNull final Plugin plugin,
                              boolean isClientOriented,
                              @NotNull final String path,
                              @NotNull final String dir,
                              @NotNull final String defaultLocaleTag)
             throws IOException, InvalidConfigurationException {
+        this(plugin, isClientOriented,
+                loadToDataFolder(plugin, path, dir),
+                new File(plugin.getDataFolder() + File.separator + path + File.separator + "override"),
+                defaultLocaleTag);
+    }
+
+    /**
+     * Setups plugin's localization like {@link #Localization(Plugin, boolean, String, String, String)},
+     * recording the time of the extraction and of the bundles loading to the profile.
+     *
+     * @param plugin The plugin for which localization is created.
+     * @param isClientOriented Will users receive messages from the plugin depending on their language or will they receive default plugin locale messages.
+     * @param path The path to the localization files directory <b>NOTE: Without specified plugin's data folder and directory name</b>.
+     * @param dir The directory name of the localization files.
+     * @param defaultLocaleTag The tag of the default plugin localization.
+     * @param profile The profile to which the localization phases are recorded.
+     * @return The {@link Localization}.
+     */
+    @NotNull
+    public static Localization load(@NotNull final Plugin plugin,
+                                    boolean isClientOriented,
+                                    @NotNull final String path,
+                                    @NotNull final String dir,
+                                    @NotNull final String defaultLocaleTag,
+                                    @NotNull final LoadProfile profile) throws IOException {
+        long phaseStart = System.nanoTime();
+        File referenceDir = loadToDataFolder(plugin, path, dir);
+        phaseStart = profile.recordSince("Localization extraction", phaseStart);
+        Localization localization = new Localization(plugin, isClientOriented, referenceDir,
+                new File(plugin.getDataFolder() + File.separator + path + File.separator + "override"),
+                defaultLocaleTag);
+        profile.recordSince("Localization bundles", phaseStart);
+        return localization;
+    }
+
+    /**
+     * Setups localization from the localization directories without extracting plugin's localization.
+     * The reference localization can be extracted beforehand with {@link #loadToDataFolder(Plugin, String, String)}.
+     *
+     * @param plugin The plugin for which localization is created.
+     * @param isClientOriented Will users receive messages from the plugin depending on their language or will they receive default plugin locale messages.
+     * @param referenceDir The directory of the reference localization files.
+     * @param overrideDir The directory of the override localization files.
+     * @param defaultLocaleTag The tag of the default plugin localization.
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    Localization(@NotNull final Plugin plugin,
+                 boolean isClientOriented,
+                 @NotNull final File referenceDir,
+                 @NotNull final File overrideDir,
+                 @NotNull final String defaultLocaleTag) throws IOException {
 
         this.plugin = plugin;
         this.isClientOriented = isClientOriented;
         this.defaultLocaleTag = defaultLocaleTag;
+        this.overrideDir = overrideDir;
 
-        File dFolder = plugin.getDataFolder();
+        overrideDir.mkdirs();
 
-        String rPath, oPath;
-        rPath = dFolder + File.separator + path + File.separator + dir;
-        oPath = dFolder + File.separator + path + File.separator + "override";
-
-        File rFile = new File(rPath);
-        File oFile = new File(oPath);
+        indexReference(referenceDir);
+        loadOverride(overrideDir);
+        this.tables = createTables();
+    }
 
-        rFile.mkdirs();
-        oFile.mkdirs();
+    /**
+     * The tables derived from the loaded bundles.
+     */
+    private static final class Tables {
+        /** Merged messages of the default localization. */
+        private final LocaleTable defaultTable;
+        /** Messages of the default reference localization, which other locales fall back to. */
+        private final Map<String, String> referenceMessages;
+        private final LocaleTable referenceTable;
+        /** Merged messages of every requested locale with the fallback chain already applied. */
+        private final Map<String, LocaleTable> localeTables = new ConcurrentHashMap<>();
+        /** Tables resolved for client locales, so a {@link Locale} is converted to its tag only once. */
+        private final Map<Locale, LocaleTable> resolvedLocales = new ConcurrentHashMap<>();
+        /** Tables resolved for online players, kept from join (or the first message) until quit. */
+        private final Map<UUID, LocaleTable> playerTables = new ConcurrentHashMap<>();
+
+        private Tables(@NotNull final String defaultLocaleTag, @NotNull final Map<String, String> defaultMessages,
+                       @NotNull final Map<String, String> referenceMessages) {
+            this.defaultTable = new LocaleTable(defaultLocaleTag, defaultMessages);
+            this.referenceMessages = Collections.unmodifiableMap(referenceMessages);
+            this.referenceTable = referenceMessages.equals(defaultMessages) ? defaultTable : new LocaleTable(defaultLocaleTag, referenceMessages);
+            localeTables.put(defaultLocaleTag, defaultTable);
+        }
+    }
 
-        loadToDataFolder(path, dir);
-        loadReference(rFile);
-        loadOverride(oFile);
+    /**
+     * @return The new tables with the default localization merged from the current bundles.
+     */
+    @NotNull
+    private Tables createTables() {
+        Map<String, String> references = new HashMap<>();
+        mergeInto(references, getReference(defaultLocaleTag));
+        Map<String, String> defaults = new HashMap<>(references);
+        mergeInto(defaults, OVERRIDE_LOCALIZATION_MAP.get(defaultLocaleTag));
+        return new Tables(defaultLocaleTag, defaults, references);
     }
 
     /**
-     * Loads all plugin's localization to dataFolder
+     * Extracts plugin's localization to dataFolder. A file is only written if it's missing
+     * or its size or CRC-32 checksum differs from the one in the plugin JAR.
+     *
+     * @param plugin The plugin whose localization is extracted.
+     * @param locPath The path to the localization files directory <b>NOTE: Without specified plugin's data folder and directory name</b>.
+     * @param locDir The directory name of the localization files.
+     * @return The directory of the extracted reference localization files.
+     * @throws IOException if the plugin JAR can't be read.
      */
-    private void loadToDataFolder(@NotNull final String locPath, @NotNull final String locDir) throws IOException {
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @NotNull
+    public static File loadToDataFolder(@NotNull final Plugin plugin, @NotNull final String locPath, @NotNull final String locDir) throws IOException {
+        File rFile = new File(plugin.getDataFolder() + File.separator + locPath + File.separator + locDir);
+        rFile.mkdirs();
+
         Matcher m = Pattern.compile("plugins/.+\\.jar$")
                 .matcher(plugin.getClass().getProtectionDomain().getCodeSource().getLocation().getPath());
 
@@ -84,28 +195,77 @@ public final class Localization {
 
             Enumeration<? extends ZipEntry> zipEntries = pJAR.entries();
             while (zipEntries.hasMoreElements()) {
-                String fileName = zipEntries.nextElement().getName();
-                if (m2.matcher(fileName).find())
+                ZipEntry entry = zipEntries.nextElement();
+                String fileName = entry.getName();
+                if (entry.isDirectory() || !m2.matcher(fileName).find())
+                    continue;
+                if (!isExtracted(entry, new File(plugin.getDataFolder(), fileName)))
                     plugin.saveResource(fileName, true);
             }
         }
+        return rFile;
     }
 
     /**
+     * @param entry The entry of the plugin JAR.
+     * @param file The extracted file.
+     * @return True if the file exists and has the same size and CRC-32 checksum as the entry.
+     */
+    private static boolean isExtracted(@NotNull final ZipEntry entry, @NotNull final File file) throws IOException {
+        if (!file.isFile() || entry.getSize() < 0 || entry.getCrc() < 0 || file.length() != entry.getSize())
+            return false;
+
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                crc.update(buffer, 0, read);
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    /**
+     * Indexes reference localization files by their locale tag without reading them.
+     *
      * @param dir The directory of the localization references.
-     * @throws IOException if an error occurred when reading from the input stream.
      */
     @SuppressWarnings("ConstantConditions")
-    private void loadReference(@NotNull final File dir) throws IOException {
+    private void indexReference(@NotNull final File dir) {
         if (dir.listFiles() == null || dir.listFiles().length == 0)
             return;
 
         for (File bundleFile : dir.listFiles()) {
-            LocalizationBundle locBundle = new LocalizationBundle(bundleFile);
-            REFERENCE_LOCALIZATION_MAP.put(locBundle.getRaw("locale.tag"), locBundle);
+            String name = bundleFile.getName();
+            if (bundleFile.isFile() && name.endsWith(BUNDLE_EXTENSION))
+                REFERENCE_FILES.put(name.substring(0, name.length() - BUNDLE_EXTENSION.length()), bundleFile);
         }
     }
 
+    /**
+     * Loads the reference localization the first time it's requested.
+     *
+     * @param localeTag The locale tag.
+     * @return The reference localization bundle or null if there is no reference localization with the tag.
+     */
+    private LocalizationBundle getReference(@NotNull final String localeTag) {
+        File bundleFile = REFERENCE_FILES.get(localeTag);
+        if (bundleFile == null)
+            return null;
+
+        return REFERENCE_LOCALIZATION_MAP.computeIfAbsent(localeTag, tag -> {
+            try {
+                LocalizationBundle locBundle = new LocalizationBundle(bundleFile);
+                if (!tag.equals(locBundle.getRaw("locale.tag")))
+                    plugin.getLogger().warning("Localization file \"" + bundleFile.getName() + "\" has \"locale.tag\" which doesn't match its name!");
+                return locBundle;
+            } catch (IOException ex) {
+                plugin.getLogger().warning("Localization file \"" + bundleFile.getName() + "\" can't be read: " + ex.getMessage());
+                return null;
+            }
+        });
+    }
+
     /**
      * Loads override localization from plugin's data folder.
      *
@@ -121,45 +281,156 @@ public final class Localization {
         for (File bundleFile : dir.listFiles()) {
             LocalizationBundle locBundle = new LocalizationBundle(bundleFile);
             String localeTag = locBundle.getRaw("locale.tag");
+            if (localeTag == null) {
+                plugin.getLogger().warning("Localization file \"" + bundleFile.getName() + "\" has no \"locale.tag\" and will be skipped!");
+                continue;
+            }
             OVERRIDE_LOCALIZATION_MAP.put(localeTag, locBundle);
+            OVERRIDE_FILES.put(bundleFile.getName(), localeTag);
             plugin.getLogger().info(localeTag + " – " + locBundle.getRaw("locale.name") + " by " + locBundle.getRaw("author"));
         }
     }
 
     /**
-     * @param key The key of the localized message.
-     * @param localeTag The locale tag.
-     * @return The {@link String} of the localization by specified locale tag.
-     * <p></p>
-     * <b>NOTE:</b> Firstly method will return override localization string by locale tag, if
-     * it's null this method will return reference localization string by locale tag, if
-     * it's null this method will return default reference localization specified in setup of {@link Localization}
-     * and if it's null too then this method will return the specified key.
+     * Reads the changed override localization file again and replaces all tables at once.
+     * If the file can't be read, the previous bundle is kept.
+     *
+     * @param bundleFile The changed, created or deleted override localization file.
      */
-    private String getClientOriented(@NotNull final String key, @NotNull final Locale localeTag) {
-        // Override-client-oriented? -> Reference-client-oriented? -> Reference-default? -> key
-        LocalizationBundle bundle;
-        String msg;
+    void reloadOverride(@NotNull final File bundleFile) {
+        synchronized (OVERRIDE_FILES) {
+            LocalizationBundle locBundle = null;
+            String localeTag = null;
+            if (bundleFile.isFile()) {
+                try {
+                    locBundle = new LocalizationBundle(bundleFile);
+                } catch (IOException ex) {
+                    plugin.getLogger().warning("Localization file \"" + bundleFile.getName() + "\" can't be read: " + ex.getMessage());
+                    return;
+                }
+                localeTag = locBundle.getRaw("locale.tag");
+                if (localeTag == null) {
+                    plugin.getLogger().warning("Localization file \"" + bundleFile.getName() + "\" has no \"locale.tag\" and will be skipped!");
+                    return;
+                }
+            }
 
-        bundle = OVERRIDE_LOCALIZATION_MAP.get(localeTag.toString());
-        if (bundle != null) {
-            msg = bundle.getRaw(key);
-            if (msg != null)
-                return msg;
-        }
-        bundle = REFERENCE_LOCALIZATION_MAP.get(localeTag.toString());
-        if (bundle != null) {
-            msg = bundle.getRaw(key);
-            if (msg != null)
-                return msg;
-        }
-        bundle = REFERENCE_LOCALIZATION_MAP.get(defaultLocaleTag);
-        if (bundle != null) {
-            msg = bundle.getRaw(key);
-            if (msg != null)
-                return msg;
+            String previousTag = OVERRIDE_FILES.remove(bundleFile.getName());
+            if (previousTag != null)
+                OVERRIDE_LOCALIZATION_MAP.remove(previousTag);
+            if (locBundle != null) {
+                OVERRIDE_LOCALIZATION_MAP.put(localeTag, locBundle);
+                OVERRIDE_FILES.put(bundleFile.getName(), localeTag);
+                plugin.getLogger().info("Override localization reloaded: " + localeTag + " – " + locBundle.getRaw("locale.name") + " by " + locBundle.getRaw("author"));
+            } else if (previousTag != null) {
+                plugin.getLogger().info("Override localization removed: " + previousTag);
+            }
+
+            this.tables = createTables();
+            TEMPLATE_CACHE.clear();
         }
-        return key;
+    }
+
+    /**
+     * Starts watching the override localization directory. Changed files are reloaded
+     * off the main thread after no more changes were made to them for the debounce delay.
+     *
+     * @param debounceMillis The delay after the last change of a file before it is reloaded.
+     * @throws IOException if the directory can't be watched.
+     */
+    public synchronized void watchOverride(long debounceMillis) throws IOException {
+        if (watcher != null)
+            return;
+        watcher = new OverrideWatcher(this, overrideDir.toPath(), debounceMillis);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the override localization directory.
+     */
+    public synchronized void close() {
+        if (watcher == null)
+            return;
+        watcher.close();
+        watcher = null;
+    }
+
+    /**
+     * Merges localization bundles of the locale into one immutable table.
+     * <p></p>
+     * The table contains the messages in the following order of priority:
+     * override localization, reference localization and reference default localization
+     * specified in setup of {@link Localization}. The override default localization
+     * only applies to the default locale.
+     *
+     * @param tables The tables to which the table will belong.
+     * @param localeTag The locale tag.
+     * @return The table of the locale or the default reference table if there are no bundles with the tag.
+     */
+    @NotNull
+    private LocaleTable buildTable(@NotNull final Tables tables, @NotNull final String localeTag) {
+        LocalizationBundle reference = getReference(localeTag);
+        LocalizationBundle override = OVERRIDE_LOCALIZATION_MAP.get(localeTag);
+        if (reference == null && override == null)
+            return tables.referenceTable;
+
+        Map<String, String> table = new HashMap<>(tables.referenceMessages);
+        mergeInto(table, reference);
+        mergeInto(table, override);
+        return new LocaleTable(localeTag, table);
+    }
+
+    private static void mergeInto(@NotNull final Map<String, String> table, final LocalizationBundle bundle) {
+        if (bundle == null)
+            return;
+        for (String key : bundle.keySet())
+            table.put(key, bundle.getRaw(key));
+    }
+
+    /**
+     * @param localeTag The locale tag or null for the default plugin localization.
+     * @return The merged table of messages which will be used for the locale.
+     */
+    @NotNull
+    private LocaleTable resolve(final Locale localeTag) {
+        Tables tables = this.tables;
+        if (localeTag == null || !isClientOriented)
+            return tables.defaultTable;
+        return tables.resolvedLocales.computeIfAbsent(localeTag,
+                locale -> tables.localeTables.computeIfAbsent(locale.toString(), tag -> buildTable(tables, tag)));
+    }
+
+    /**
+     * @param player The player.
+     * @return The merged table of messages which will be used for the player.
+     */
+    @NotNull
+    private LocaleTable resolve(@NotNull final Player player) {
+        Tables tables = this.tables;
+        if (!isClientOriented)
+            return tables.defaultTable;
+        return tables.playerTables.computeIfAbsent(player.getUniqueId(), uuid -> resolve(player.locale()));
+    }
+
+    /**
+     * Resolves the localization of the player once, so the following messages sent to
+     * the player skip the locale resolution.
+     *
+     * @param player The player.
+     * @param localeTag The current locale of the player.
+     */
+    public void updatePlayerLocale(@NotNull final Player player, @NotNull final Locale localeTag) {
+        if (isClientOriented)
+            tables.playerTables.put(player.getUniqueId(), resolve(localeTag));
+    }
+
+    /**
+     * Forgets the resolved localization of the player.
+     *
+     * @param uuid The {@link UUID} of the player.
+     */
+    public void forgetPlayer(@NotNull final UUID uuid) {
+        tables.playerTables.remove(uuid);
     }
 
     /**
@@ -171,23 +442,8 @@ public final class Localization {
      * and if it's null too then this method will return the specified key.
      */
     public String getRaw(@NotNull final String key) {
-        // Override-default? -> Reference-default? -> key
-        LocalizationBundle bundle;
-        String msg;
-
-        bundle = OVERRIDE_LOCALIZATION_MAP.get(defaultLocaleTag);
-        if (bundle != null) {
-            msg = bundle.getRaw(key);
-            if (msg != null)
-                return msg;
-        }
-        bundle = REFERENCE_LOCALIZATION_MAP.get(defaultLocaleTag);
-        if (bundle != null) {
-            msg = bundle.getRaw(key);
-            if (msg != null)
-                return msg;
-        }
-        return key;
+        String msg = tables.defaultTable.get(key);
+        return msg != null ? msg : key;
     }
 
     /**
@@ -197,13 +453,23 @@ public final class Localization {
      * <p></p>
      * <b>NOTE:</b> Firstly method will return override localization string by locale tag, if
      * it's null this method will return reference localization string by locale tag, if
-     * it's null this method will return default reference localization specified in setup of {@link Localization}
+     * it's null this method will return default localization specified in setup of {@link Localization}
      * and if it's null too then this method will return the specified key.
+     * The chain is resolved once on load, so the lookup is a single map hit.
      */
     public String getRaw(@NotNull final String key, @NotNull final Locale localeTag) {
-        if (isClientOriented)
-            return getClientOriented(key, localeTag);
-        else return getRaw(key);
+        String msg = resolve(localeTag).get(key);
+        return msg != null ? msg : key;
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @param player The player who will receive the message.
+     * @return The {@link String} of the localization which is used for the player.
+     */
+    public String getRaw(@NotNull final String key, @NotNull final Player player) {
+        String msg = resolve(player).get(key);
+        return msg != null ? msg : key;
     }
 
     /**
@@ -215,7 +481,7 @@ public final class Localization {
      * and if it's null too then this method will return the specified key.
      */
     public Component get(@NotNull final String key) {
-        return MiniMessage.miniMessage().deserialize(getRaw(key));
+        return render(tables.defaultTable, key, MessageTemplate.Kind.PLAIN, null);
     }
 
     /**
@@ -228,15 +494,7 @@ public final class Localization {
      * and if it's null too then this method will return the specified key.
      */
     public Component get(@NotNull final String key, String... placeholders) {
-        String text = getRaw(key);
-        try {
-            text = MessageFormat.format(text, (Object) placeholders);
-        } catch (IllegalArgumentException ex) {
-            plugin.getLogger().warning("Invalid placeholders under the key \"" + key + "\" of default localization (\"" + this.defaultLocaleTag + "\")!");
-        } catch (NullPointerException ex) {
-            plugin.getLogger().warning("Placeholders under the key \"" + key + "\" of default localization (\"" + this.defaultLocaleTag + "\") are null!");
-        }
-        return MiniMessage.miniMessage().deserialize(text);
+        return render(tables.defaultTable, key, MessageTemplate.Kind.FORMATTED, placeholders);
     }
 
     /**
@@ -250,7 +508,7 @@ public final class Localization {
      * and if it's null too then this method will return the specified key.
      */
     public Component get(@NotNull final String key, @NotNull final Locale localeTag) {
-        return MiniMessage.miniMessage().deserialize(getRaw(key, localeTag));
+        return render(resolve(localeTag), key, MessageTemplate.Kind.PLAIN, null);
     }
 
     /**
@@ -260,15 +518,114 @@ public final class Localization {
      * @return The deserialized {@link MiniMessage} {@link Component} of the localization by specified locale tag with placeholders.
      */
     public Component get(@NotNull final String key, @NotNull final Locale localeTag, @NotNull String... placeholders) {
-        String text = getRaw(key, localeTag);
-        try {
-            text = MessageFormat.format(text, (Object) placeholders);
-        } catch (IllegalArgumentException ex) {
-            plugin.getLogger().warning("Invalid placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization!");
-        } catch (NullPointerException ex) {
-            plugin.getLogger().warning("Placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization are null!");
+        return render(resolve(localeTag), key, MessageTemplate.Kind.FORMATTED, placeholders);
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @param player The player who will receive the message.
+     * @return The deserialized {@link MiniMessage} {@link Component} of the localization which is used for the player.
+     */
+    public Component get(@NotNull final String key, @NotNull final Player player) {
+        return render(resolve(player), key, MessageTemplate.Kind.PLAIN, null);
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @param player The player who will receive the message.
+     * @param placeholders The message placeholders.
+     * @return The deserialized {@link MiniMessage} {@link Component} of the localization which is used for the player with placeholders.
+     */
+    public Component get(@NotNull final String key, @NotNull final Player player, @NotNull String... placeholders) {
+        return render(resolve(player), key, MessageTemplate.Kind.FORMATTED, placeholders);
+    }
+
+    /**
+     * Sends the localized message to every recipient. Recipients are grouped by the localization
+     * used for them, so the message is rendered once per localization instead of once per recipient.
+     * Players receive the message of their localization, other senders (e.g. the console)
+     * receive the message of the default plugin localization.
+     * <p></p>
+     * Like every method which takes placeholders, the message is formatted even if no placeholders are passed,
+     * so it renders the same as {@link #get(String, Player, String...)}.
+     *
+     * @param recipients The recipients of the message.
+     * @param key The key of the localized message.
+     * @param placeholders The message placeholders.
+     */
+    public void send(@NotNull final Collection<? extends CommandSender> recipients, @NotNull final String key, @NotNull final String... placeholders) {
+        if (recipients.isEmpty())
+            return;
+
+        Map<LocaleTable, List<CommandSender>> groups = new IdentityHashMap<>();
+        for (CommandSender recipient : recipients) {
+            LocaleTable table = recipient instanceof Player ? resolve((Player) recipient) : tables.defaultTable;
+            groups.computeIfAbsent(table, t -> new ArrayList<>()).add(recipient);
         }
-        return MiniMessage.miniMessage().deserialize(text);
+
+        groups.forEach((table, group) -> {
+            Component msg = render(table, key, MessageTemplate.Kind.FORMATTED, placeholders);
+            for (CommandSender recipient : group)
+                recipient.sendMessage(msg);
+        });
+    }
+
+    /**
+     * Sends the localized message to every online player and the console.
+     *
+     * @param key The key of the localized message.
+     * @param placeholders The message placeholders.
+     * @see #send(Collection, String, String...)
+     */
+    public void broadcast(@NotNull final String key, @NotNull final String... placeholders) {
+        List<CommandSender> recipients = new ArrayList<>(Bukkit.getOnlinePlayers());
+        recipients.add(Bukkit.getConsoleSender());
+        send(recipients, key, placeholders);
+    }
+
+    /**
+     * @param table The localization table of the message.
+     * @param key The key of the localized message.
+     * @param kind The kind of the message template.
+     * @param placeholders The message placeholders (only used by formatted kinds).
+     * @return The {@link Component} rendered from the cached {@link MessageTemplate}.
+     */
+    @NotNull
+    private Component render(@NotNull final LocaleTable table, @NotNull final String key, @NotNull final MessageTemplate.Kind kind, final String[] placeholders) {
+        String tag = table.getTag();
+        MessageTemplate template = TEMPLATE_CACHE.get(table, key, kind, () -> {
+            String raw = table.get(key);
+            if (raw == null)
+                raw = key;
+            if (!kind.isFormatted())
+                return MessageTemplate.parse(raw, kind);
+            try {
+                return MessageTemplate.parse(raw, kind);
+            } catch (IllegalArgumentException ex) {
+                plugin.getLogger().warning("Invalid placeholders under the key \"" + key + "\" of \"" + tag + "\" localization: " + ex.getMessage());
+                return MessageTemplate.plain(raw, kind);
+            }
+        });
+
+        if (kind.isFormatted() && placeholders == null)
+            plugin.getLogger().warning("Placeholders under the key \"" + key + "\" of \"" + tag + "\" localization are null!");
+        return template.render(placeholders);
+    }
+
+    /**
+     * Clears the cache of parsed messages.
+     */
+    public void invalidateCache() {
+        TEMPLATE_CACHE.clear();
+    }
+
+    /**
+     * @return The statistics of the parsed messages cache in the "size / capacity, hits, misses" format.
+     */
+    @NotNull
+    public String getCacheStats() {
+        return TEMPLATE_CACHE.size() + " / " + TEMPLATE_CACHE.getCapacity() + " templates, "
+                + TEMPLATE_CACHE.getHits() + " hits, " + TEMPLATE_CACHE.getMisses() + " misses";
     }
 
     /**
@@ -288,18 +645,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<String> getNumberedListRaw(@NotNull final String key) {
-        List<String> text = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n);
-                text.add(element);
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return text;
+        return tables.defaultTable.getList(key).getRaw();
     }
 
     /**
@@ -319,18 +665,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedList(@NotNull final String key) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                Component element = get(key + "." + n);
-                components.add(element);
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return components;
+        return tables.defaultTable.getList(key).getComponents();
     }
 
     /**
@@ -350,18 +685,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedListLoreNormalized(@NotNull final String key) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n);
-                components.add(MiniMessage.miniMessage().deserialize("<white><i:false>" + element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return components;
+        return tables.defaultTable.getList(key).getLoreComponents();
     }
 
     /**
@@ -381,25 +705,11 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedList(@NotNull final String key, String... placeholders) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String actualKey = key + "." + n;
-                String element = getRaw(actualKey);
-                try {
-                    element = MessageFormat.format(element, (Object) placeholders);
-                } catch (IllegalArgumentException ex) {
-                    plugin.getLogger().warning("Invalid placeholders under the key \"" + actualKey + "\" of default localization (\"" + this.defaultLocaleTag + "\")!");
-                } catch (NullPointerException ex) {
-                    plugin.getLogger().warning("Placeholders under the key \"" + actualKey + "\" of default localization (\"" + this.defaultLocaleTag + "\") are null!");
-                }
-                components.add(MiniMessage.miniMessage().deserialize(element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
+        LocaleTable table = tables.defaultTable;
+        int size = table.getList(key).size();
+        List<Component> components = new ArrayList<>(size);
+        for (int n = 1; n <= size; n++)
+            components.add(render(table, key + "." + n, MessageTemplate.Kind.FORMATTED, placeholders));
         return components;
     }
 
@@ -420,25 +730,11 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedListLoreNormalized(@NotNull final String key, @NotNull final String... placeholders) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String actualKey = key + "." + n;
-                String element = getRaw(actualKey);
-                try {
-                    element = MessageFormat.format(element, (Object) placeholders);
-                } catch (IllegalArgumentException ex) {
-                    plugin.getLogger().warning("Invalid placeholders under the key \"" + actualKey + "\" of default localization (\"" + this.defaultLocaleTag + "\")!");
-                } catch (NullPointerException ex) {
-                    plugin.getLogger().warning("Placeholders under the key \"" + actualKey + "\" of default localization (\"" + this.defaultLocaleTag + "\") are null!");
-                }
-                components.add(MiniMessage.miniMessage().deserialize("<white><i:false>" + element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
+        LocaleTable table = tables.defaultTable;
+        int size = table.getList(key).size();
+        List<Component> components = new ArrayList<>(size);
+        for (int n = 1; n <= size; n++)
+            components.add(render(table, key + "." + n, MessageTemplate.Kind.LORE_FORMATTED, placeholders));
         return components;
     }
 
@@ -461,18 +757,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<String> getNumberedListRaw(@NotNull final String key, @NotNull final Locale localeTag) {
-        List<String> text = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n, localeTag);
-                text.add(element);
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return text;
+        return resolve(localeTag).getList(key).getRaw();
     }
 
     /**
@@ -494,18 +779,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedList(@NotNull final String key, @NotNull final Locale localeTag) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                Component element = get(key + "." + n, localeTag);
-                n++;
-                components.add(element);
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return components;
+        return resolve(localeTag).getList(key).getComponents();
     }
 
     /**
@@ -527,18 +801,7 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedListLoreNormalized(@NotNull final String key, @NotNull final Locale localeTag) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n, localeTag);
-                components.add(MiniMessage.miniMessage().deserialize("<white><i:false>" + element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
-        return components;
+        return resolve(localeTag).getList(key).getLoreComponents();
     }
 
     /**
@@ -560,24 +823,11 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedList(@NotNull final String key, @NotNull final Locale localeTag, @NotNull final String... placeholders) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n, localeTag);
-                try {
-                    element = MessageFormat.format(element, (Object) placeholders);
-                } catch (IllegalArgumentException ex) {
-                    plugin.getLogger().warning("Invalid placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization!");
-                } catch (NullPointerException ex) {
-                    plugin.getLogger().warning("Placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization are null!");
-                }
-                components.add(MiniMessage.miniMessage().deserialize(element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
+        LocaleTable table = resolve(localeTag);
+        int size = table.getList(key).size();
+        List<Component> components = new ArrayList<>(size);
+        for (int n = 1; n <= size; n++)
+            components.add(render(table, key + "." + n, MessageTemplate.Kind.FORMATTED, placeholders));
         return components;
     }
 
@@ -600,24 +850,35 @@ public final class Localization {
      * <p>message.example.4=of this example text is "message.example"!</p>
      */
     public List<Component> getNumberedListLoreNormalized(@NotNull final String key, @NotNull final Locale localeTag, @NotNull final String... placeholders) {
-        List<Component> components = new ArrayList<>();
-        int n = 1;
-        while (true) {
-            try {
-                String element = getRaw(key + "." + n, localeTag);
-                try {
-                    element = MessageFormat.format(element, (Object) placeholders);
-                } catch (IllegalArgumentException ex) {
-                    plugin.getLogger().warning("Invalid placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization!");
-                } catch (NullPointerException ex) {
-                    plugin.getLogger().warning("Placeholders under the key \"" + key + "\" of \"" + localeTag + "\" localization are null!");
-                }
-                components.add(MiniMessage.miniMessage().deserialize("<white><i:false>" + element));
-                n++;
-            } catch (MissingResourceException e) {
-                break;
-            }
-        }
+        LocaleTable table = resolve(localeTag);
+        int size = table.getList(key).size();
+        List<Component> components = new ArrayList<>(size);
+        for (int n = 1; n <= size; n++)
+            components.add(render(table, key + "." + n, MessageTemplate.Kind.LORE_FORMATTED, placeholders));
+        return components;
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @param player The player who will receive the messages.
+     * @return The {@link Component} list of numbered messages of the localization which is used for the player.
+     */
+    public List<Component> getNumberedList(@NotNull final String key, @NotNull final Player player) {
+        return resolve(player).getList(key).getComponents();
+    }
+
+    /**
+     * @param key The key of the localized message.
+     * @param player The player who will receive the messages.
+     * @param placeholders The message placeholders.
+     * @return The {@link Component} list of numbered messages of the localization which is used for the player with placeholders.
+     */
+    public List<Component> getNumberedList(@NotNull final String key, @NotNull final Player player, @NotNull final String... placeholders) {
+        LocaleTable table = resolve(player);
+        int size = table.getList(key).size();
+        List<Component> components = new ArrayList<>(size);
+        for (int n = 1; n <= size; n++)
+            components.add(render(table, key + "." + n, MessageTemplate.Kind.FORMATTED, placeholders));
         return components;
     }
-}
\ No newline at end of file
+}
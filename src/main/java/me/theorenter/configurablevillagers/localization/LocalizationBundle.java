@@ -1,11 +1,14 @@
 package me.theorenter.configurablevillagers.localization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.PropertyResourceBundle;
+import java.util.Set;
 
 /**
  * The localization set.
@@ -18,14 +21,25 @@ public class LocalizationBundle {
      * @throws IOException if an error occurred when reading from the input stream.
      */
     public LocalizationBundle(@NotNull final File bundleFile) throws IOException {
-        this.locProperty = new PropertyResourceBundle(Files.newInputStream(bundleFile.toPath()));
+        try (InputStream in = Files.newInputStream(bundleFile.toPath())) {
+            this.locProperty = new PropertyResourceBundle(in);
+        }
     }
 
     /**
      * @param key The key of the string.
-     * @return The string of localization by the key.
+     * @return The string of localization by the key or null if the bundle doesn't contain it.
      */
+    @Nullable
     public String getRaw(@NotNull final String key) {
-        return locProperty.getString(key);
+        return (String) locProperty.handleGetObject(key);
+    }
+
+    /**
+     * @return The keys of the strings contained in the bundle.
+     */
+    @NotNull
+    public Set<String> keySet() {
+        return locProperty.keySet();
     }
 }
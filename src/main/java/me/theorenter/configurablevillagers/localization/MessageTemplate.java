@@ -0,0 +1,233 @@
+package me.theorenter.configurablevillagers.localization;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Pattern;
+
+/**
+ * Pre-parsed localized message.
+ * <p></p>
+ * The message is deserialized by {@link MiniMessage} once. {@link java.text.MessageFormat} placeholders
+ * ({0}, {1}, ...) in the text are kept in the parsed tree as markers and are filled with plain text on rendering,
+ * so rendering a message never parses it again.
+ * <p></p>
+ * Placeholders inside tags (e.g. in click commands or hover texts) can't be kept in the parsed tree,
+ * so such messages are deserialized on every rendering with the placeholders passed as {@link TagResolver}s.
+ * Only the plain {n} form is supported, the {n,type,style} form is rejected.
+ */
+final class MessageTemplate {
+    private static final String LORE_PREFIX = "<white><i:false>";
+    private static final char ARGUMENT_START = '\uE000';
+    private static final char ARGUMENT_END = '\uE001';
+    private static final Pattern ARGUMENT_PATTERN = Pattern.compile(ARGUMENT_START + "(\\d+)" + ARGUMENT_END);
+    private static final String TEXT_ARGUMENT_TAG = "cv_text_";
+    private static final String TAG_ARGUMENT_TAG = "cv_arg_";
+
+    /**
+     * The way the raw message is turned into a template.
+     */
+    enum Kind {
+        PLAIN(false, ""),
+        FORMATTED(true, ""),
+        LORE(false, LORE_PREFIX),
+        LORE_FORMATTED(true, LORE_PREFIX);
+
+        private final boolean formatted;
+        private final String prefix;
+
+        Kind(boolean formatted, @NotNull final String prefix) {
+            this.formatted = formatted;
+            this.prefix = prefix;
+        }
+
+        boolean isFormatted() {
+            return formatted;
+        }
+    }
+
+    private final Component component;
+    private final boolean hasArguments;
+    private final String source;
+    private final int argumentCount;
+
+    private MessageTemplate(@NotNull final Component component, boolean hasArguments) {
+        this.component = component;
+        this.hasArguments = hasArguments;
+        this.source = null;
+        this.argumentCount = 0;
+    }
+
+    private MessageTemplate(@NotNull final String source, int argumentCount) {
+        this.component = null;
+        this.hasArguments = true;
+        this.source = source;
+        this.argumentCount = argumentCount;
+    }
+
+    /**
+     * @param raw The raw localized message.
+     * @param kind The kind of the template.
+     * @return The parsed {@link MessageTemplate}.
+     * @throws IllegalArgumentException If the message is formatted and its placeholders are invalid.
+     */
+    @NotNull
+    static MessageTemplate parse(@NotNull final String raw, @NotNull final Kind kind) {
+        if (!kind.formatted)
+            return new MessageTemplate(MiniMessage.miniMessage().deserialize(kind.prefix + raw), false);
+
+        Conversion conversion = new Conversion(raw);
+        if (conversion.inTags)
+            return new MessageTemplate(kind.prefix + conversion.withTags, conversion.argumentCount);
+
+        return new MessageTemplate(MiniMessage.miniMessage().deserialize(kind.prefix + conversion.withMarkers),
+                conversion.argumentCount > 0);
+    }
+
+    /**
+     * @param raw The raw localized message.
+     * @param kind The kind of the template.
+     * @return The template of the raw message without placeholders, used when the placeholders of the message are invalid.
+     */
+    @NotNull
+    static MessageTemplate plain(@NotNull final String raw, @NotNull final Kind kind) {
+        return new MessageTemplate(MiniMessage.miniMessage().deserialize(kind.prefix + raw), false);
+    }
+
+    /**
+     * @param placeholders The message placeholders.
+     * @return The {@link Component} with the placeholders filled.
+     */
+    @NotNull
+    Component render(@Nullable final String[] placeholders) {
+        if (!hasArguments)
+            return component;
+
+        if (source != null) {
+            TagResolver.Builder resolver = TagResolver.builder();
+            for (int i = 0; i < argumentCount; i++) {
+                String value = valueOf(placeholders, i);
+                resolver.resolver(Placeholder.unparsed(TEXT_ARGUMENT_TAG + i, value));
+                resolver.resolver(Placeholder.parsed(TAG_ARGUMENT_TAG + i, escapeArgument(value)));
+            }
+            return MiniMessage.miniMessage().deserialize(source, resolver.build());
+        }
+
+        return component.replaceText(TextReplacementConfig.builder()
+                .match(ARGUMENT_PATTERN)
+                .replacement((match, builder) -> builder.content(valueOf(placeholders, Integer.parseInt(match.group(1)))))
+                .build());
+    }
+
+    @NotNull
+    private static String valueOf(@Nullable final String[] placeholders, int index) {
+        if (placeholders == null || index >= placeholders.length)
+            return "{" + index + "}";
+        return String.valueOf(placeholders[index]);
+    }
+
+    /**
+     * Escapes the placeholder value, so it can't close the tag argument or open a new tag.
+     */
+    @NotNull
+    private static String escapeArgument(@NotNull final String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '\'' || c == '"' || c == '<')
+                escaped.append('\\');
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * The raw message with the quoting rules of {@link java.text.MessageFormat} applied
+     * and its placeholders replaced with markers or with tags.
+     */
+    private static final class Conversion {
+        private final StringBuilder markers;
+        private final StringBuilder tags;
+        private final String withMarkers;
+        private final String withTags;
+        private int argumentCount;
+        private boolean inTags;
+
+        // The state of the MiniMessage tag the next char belongs to.
+        private boolean inTag;
+        private char tagQuote;
+        private boolean escaped;
+
+        private Conversion(@NotNull final String raw) {
+            markers = new StringBuilder(raw.length());
+            tags = new StringBuilder(raw.length());
+            boolean quoted = false;
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < raw.length() && raw.charAt(i + 1) == '\'') {
+                        append('\'');
+                        i++;
+                    } else quoted = !quoted;
+                } else if (c == '{' && !quoted) {
+                    int end = raw.indexOf('}', i);
+                    if (end < 0)
+                        throw new IllegalArgumentException("Unmatched braces in the pattern.");
+                    appendArgument(raw.substring(i + 1, end).trim());
+                    i = end;
+                } else append(c);
+            }
+            withMarkers = markers.toString();
+            withTags = tags.toString();
+        }
+
+        private void appendArgument(@NotNull final String argument) {
+            if (argument.indexOf(',') >= 0)
+                throw new IllegalArgumentException("Formatted arguments aren't supported, use {n} instead of {" + argument + "}");
+            int index;
+            try {
+                index = Integer.parseInt(argument);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Can't parse argument number: " + argument);
+            }
+            if (index < 0)
+                throw new IllegalArgumentException("Negative argument number: " + index);
+
+            argumentCount = Math.max(argumentCount, index + 1);
+            markers.append(ARGUMENT_START).append(index).append(ARGUMENT_END);
+            if (inTag) {
+                inTags = true;
+                tags.append('<').append(TAG_ARGUMENT_TAG).append(index).append('>');
+            } else tags.append('<').append(TEXT_ARGUMENT_TAG).append(index).append('>');
+        }
+
+        private void append(char c) {
+            markers.append(c);
+            tags.append(c);
+            if (escaped) {
+                escaped = false;
+                return;
+            }
+
+            if (c == '\\')
+                escaped = true;
+            else if (!inTag) {
+                if (c == '<') {
+                    inTag = true;
+                    tagQuote = 0;
+                }
+            } else if (tagQuote != 0) {
+                if (c == tagQuote)
+                    tagQuote = 0;
+            } else if (c == '\'' || c == '"')
+                tagQuote = c;
+            else if (c == '>')
+                inTag = false;
+        }
+    }
+}
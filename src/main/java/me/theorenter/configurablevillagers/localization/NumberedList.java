@@ -0,0 +1,92 @@
+package me.theorenter.configurablevillagers.localization;
+
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The numbered list of localized messages ({@code key.1}, {@code key.2}, ...) indexed on load.
+ */
+final class NumberedList {
+
+    static final NumberedList EMPTY = new NumberedList(Collections.emptyList());
+
+    private final List<String> raw;
+    private final List<Component> components;
+    private final List<Component> loreComponents;
+
+    /**
+     * @param raw The raw localized messages of the list in their order.
+     */
+    private NumberedList(@NotNull final List<String> raw) {
+        List<Component> components = new ArrayList<>(raw.size());
+        List<Component> loreComponents = new ArrayList<>(raw.size());
+        for (String element : raw) {
+            components.add(MessageTemplate.parse(element, MessageTemplate.Kind.PLAIN).render(null));
+            loreComponents.add(MessageTemplate.parse(element, MessageTemplate.Kind.LORE).render(null));
+        }
+        this.raw = Collections.unmodifiableList(raw);
+        this.components = Collections.unmodifiableList(components);
+        this.loreComponents = Collections.unmodifiableList(loreComponents);
+    }
+
+    /**
+     * Finds every numbered list of the table. A list starts from the element {@code 1}
+     * and ends before the first missing number.
+     *
+     * @param table The merged table of localized messages.
+     * @return The numbered lists of the table by their keys.
+     */
+    @NotNull
+    static Map<String, NumberedList> index(@NotNull final Map<String, String> table) {
+        Map<String, NumberedList> lists = new HashMap<>();
+        for (String key : table.keySet()) {
+            if (!key.endsWith(".1"))
+                continue;
+
+            String listKey = key.substring(0, key.length() - 2);
+            List<String> raw = new ArrayList<>();
+            String element;
+            for (int n = 1; (element = table.get(listKey + "." + n)) != null; n++)
+                raw.add(element);
+            lists.put(listKey, new NumberedList(raw));
+        }
+        return Collections.unmodifiableMap(lists);
+    }
+
+    /**
+     * @return The raw localized messages of the list.
+     */
+    @NotNull
+    List<String> getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return The deserialized messages of the list.
+     */
+    @NotNull
+    List<Component> getComponents() {
+        return components;
+    }
+
+    /**
+     * @return The deserialized lore normalized (white and disabled italic) messages of the list.
+     */
+    @NotNull
+    List<Component> getLoreComponents() {
+        return loreComponents;
+    }
+
+    /**
+     * @return The number of the messages in the list.
+     */
+    int size() {
+        return raw.size();
+    }
+}
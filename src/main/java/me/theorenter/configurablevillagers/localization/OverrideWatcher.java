@@ -0,0 +1,119 @@
+package me.theorenter.configurablevillagers.localization;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the override localization directory and reloads changed bundles on its own daemon thread.
+ * <p></p>
+ * Events are debounced per file, so an editor saving a file several times in a row causes a single reload.
+ */
+final class OverrideWatcher implements Runnable {
+
+    private static final String BUNDLE_EXTENSION = ".properties";
+
+    private final Localization localization;
+    private final Path dir;
+    private final long debounceNanos;
+    private final WatchService service;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * @param localization The localization which bundles are reloaded.
+     * @param dir The override localization directory.
+     * @param debounceMillis The delay after the last change of a file before it is reloaded.
+     * @throws IOException if the directory can't be watched.
+     */
+    OverrideWatcher(@NotNull final Localization localization, @NotNull final Path dir, long debounceMillis) throws IOException {
+        this.localization = localization;
+        this.dir = dir;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.service = FileSystems.getDefault().newWatchService();
+        dir.register(service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        this.thread = new Thread(this, "ConfigurableVillagers-LocalizationWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void close() {
+        closed = true;
+        try {
+            service.close();
+        } catch (IOException ignored) {
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        // File name -> time of the last change
+        Map<String, Long> pending = new HashMap<>();
+        try {
+            while (!closed) {
+                WatchKey key = pending.isEmpty()
+                        ? service.take()
+                        : service.poll(TimeUnit.NANOSECONDS.toMillis(debounceNanos), TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            markAll(pending);
+                            continue;
+                        }
+                        String name = event.context().toString();
+                        if (name.endsWith(BUNDLE_EXTENSION))
+                            pending.put(name, System.nanoTime());
+                    }
+                    if (!key.reset())
+                        return;
+                }
+
+                long now = System.nanoTime();
+                Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Long> entry = it.next();
+                    if (now - entry.getValue() < debounceNanos)
+                        continue;
+                    it.remove();
+                    localization.reloadOverride(dir.resolve(entry.getKey()).toFile());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Closed
+        }
+    }
+
+    /**
+     * Marks every bundle of the directory as changed, used when some events were lost.
+     */
+    private void markAll(@NotNull final Map<String, Long> pending) {
+        File[] files = dir.toFile().listFiles();
+        if (files == null)
+            return;
+        long now = System.nanoTime();
+        for (File file : files)
+            if (file.getName().endsWith(BUNDLE_EXTENSION))
+                pending.put(file.getName(), now);
+    }
+}
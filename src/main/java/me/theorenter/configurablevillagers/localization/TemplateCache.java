@@ -0,0 +1,105 @@
+package me.theorenter.configurablevillagers.localization;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of {@link MessageTemplate}s by locale table, message key and template kind.
+ * <p></p>
+ * Tables are compared by identity, so templates of a replaced table are never returned again.
+ */
+final class TemplateCache {
+    private final int capacity;
+    private final Map<Key, MessageTemplate> TEMPLATES;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity The maximum number of cached templates.
+     */
+    TemplateCache(int capacity) {
+        this.capacity = capacity;
+        this.TEMPLATES = new LinkedHashMap<Key, MessageTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MessageTemplate> eldest) {
+                return size() > TemplateCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param table The locale table of the message.
+     * @param key The key of the message.
+     * @param kind The kind of the template.
+     * @param loader Parses the template if it isn't cached. Exceptions thrown by it are propagated and nothing is cached.
+     * @return The cached or loaded {@link MessageTemplate}.
+     */
+    @NotNull
+    synchronized MessageTemplate get(@NotNull final LocaleTable table,
+                                     @NotNull final String key,
+                                     @NotNull final MessageTemplate.Kind kind,
+                                     @NotNull final Supplier<MessageTemplate> loader) {
+        Key cacheKey = new Key(table, key, kind);
+        MessageTemplate template = TEMPLATES.get(cacheKey);
+        if (template != null) {
+            hits.increment();
+            return template;
+        }
+
+        misses.increment();
+        template = loader.get();
+        TEMPLATES.put(cacheKey, template);
+        return template;
+    }
+
+    synchronized void clear() {
+        TEMPLATES.clear();
+    }
+
+    synchronized int size() {
+        return TEMPLATES.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Key {
+        private final LocaleTable table;
+        private final String key;
+        private final MessageTemplate.Kind kind;
+        private final int hash;
+
+        private Key(@NotNull final LocaleTable table, @NotNull final String key, @NotNull final MessageTemplate.Kind kind) {
+            this.table = table;
+            this.key = key;
+            this.kind = kind;
+            this.hash = (System.identityHashCode(table) * 31 + key.hashCode()) * 31 + kind.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return kind == other.kind && key.equals(other.key) && table == other.table;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
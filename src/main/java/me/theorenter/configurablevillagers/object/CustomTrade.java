@@ -5,13 +5,23 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.MerchantRecipe;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 
 public class CustomTrade {
     private final String ID;
-    private final MerchantRecipe recipe;
+    private int ordinal = -1;
+    private double weight = 1;
+    // Templates of the recipe, never exposed and never mutated after loading
+    private final ItemStack result;
+    private final List<ItemStack> ingredients = new ArrayList<>(2);
+    private final int maxUses;
+    private float priceMultiplier;
+    private int villagerExp;
+    private boolean playerExp;
     private List<Villager.Profession> professions;
     private List<Integer> levels;
 
@@ -25,24 +35,27 @@ public class CustomTrade {
         if (maxUses < 0)
             throw new IllegalArgumentException();
 
-        this.recipe = new MerchantRecipe(result, maxUses);
+        this.result = result.clone();
+        this.maxUses = maxUses;
         this.levels = Arrays.asList(1, 2, 3, 4, 5);
     }
 
     public void addIngredient(@NotNull final ItemStack ingredient) {
-        recipe.addIngredient(ingredient);
+        if (ingredients.size() >= 2)
+            throw new IllegalArgumentException("Merchant recipes can have at most 2 ingredients");
+        ingredients.add(ingredient.clone());
     }
 
     public void setPriceMultiplier(float priceMultiplier) {
-        this.recipe.setPriceMultiplier(priceMultiplier);
+        this.priceMultiplier = priceMultiplier;
     }
 
     public void setVillagerExp(int villagerExp) {
-        recipe.setVillagerExperience(villagerExp);
+        this.villagerExp = villagerExp;
     }
 
     public void setPlayerExp(boolean flag) {
-        recipe.setExperienceReward(flag);
+        this.playerExp = flag;
     }
 
     public void setAvailableProfessions(@NotNull final List<Villager.Profession> professions) {
@@ -53,6 +66,12 @@ public class CustomTrade {
         this.levels = levels;
     }
 
+    public void setWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight))
+            throw new IllegalArgumentException();
+        this.weight = weight;
+    }
+
     public void setAvailableTypes(@NotNull final List<Villager.Type> types) {
         this.types = types;
     }
@@ -62,11 +81,84 @@ public class CustomTrade {
         return ID;
     }
 
+    /**
+     * @return The dense ordinal assigned to this trade by {@link me.theorenter.configurablevillagers.utils.TradeStorage} or -1 if it isn't registered.
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Creates a new recipe of this trade, so uses, demand and other state of the recipe
+     * are never shared between villagers.
+     * <p></p>
+     * Items are copied from the templates built on loading, which copies their
+     * {@link org.bukkit.inventory.meta.ItemMeta} without applying NBT, enchantments
+     * and attributes again.
+     *
+     * @return The new {@link MerchantRecipe} of this trade.
+     */
     @NotNull
-    public MerchantRecipe getRecipe() {
+    public MerchantRecipe newRecipe() {
+        MerchantRecipe recipe = new MerchantRecipe(result.clone(), 0, maxUses, playerExp, villagerExp, priceMultiplier);
+        // Ingredients are copied by the recipe
+        recipe.setIngredients(ingredients);
         return recipe;
     }
 
+    /**
+     * @return The new {@link MerchantRecipe} of this trade.
+     * @deprecated The recipe is no longer shared, use {@link #newRecipe()}.
+     */
+    @NotNull
+    @Deprecated
+    public MerchantRecipe getRecipe() {
+        return newRecipe();
+    }
+
+    /**
+     * @return The copy of the result template.
+     */
+    @NotNull
+    public ItemStack getResult() {
+        return result.clone();
+    }
+
+    /**
+     * @return The read-only view of the ingredient templates. The items must not be modified.
+     */
+    @NotNull
+    public List<ItemStack> getIngredients() {
+        return Collections.unmodifiableList(ingredients);
+    }
+
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    public float getPriceMultiplier() {
+        return priceMultiplier;
+    }
+
+    public int getVillagerExp() {
+        return villagerExp;
+    }
+
+    public boolean givesPlayerExp() {
+        return playerExp;
+    }
+
+
+    /**
+     * @return The relative chance of this trade to be picked among the other eligible trades.
+     */
+    public double getWeight() {
+        return weight;
+    }
 
     public List<Integer> getLevels() {
         return levels;
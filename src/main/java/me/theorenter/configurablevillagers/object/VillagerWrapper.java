@@ -1,52 +1,67 @@
 package me.theorenter.configurablevillagers.object;
 
+import me.theorenter.configurablevillagers.utils.TradeDataCodec;
+import me.theorenter.configurablevillagers.utils.VillagerTradeCache;
 import org.bukkit.NamespacedKey;
 import org.bukkit.entity.Villager;
 import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
 public class VillagerWrapper {
     private final Villager villager;
-    private final NamespacedKey tradesNSK = new NamespacedKey("configurablevillagers", "trades");
+    private final NamespacedKey tradesNSK = TradeDataCodec.TRADES_KEY;
+    private final VillagerTradeCache cache;
 
     public VillagerWrapper(@NotNull final Villager villager) {
-        this.villager = villager;
-
-        PersistentDataContainer pdc = villager.getPersistentDataContainer();
+        this(villager, null);
+    }
 
-        if (!pdc.has(tradesNSK)) {
-            pdc.set(
-                    tradesNSK,
-                    PersistentDataType.LIST.strings(),
-                    new ArrayList<>()
-            );
-        }
+    /**
+     * Creating a wrapper doesn't modify the villager. Its trades tag is created when the first trade identifier is added.
+     *
+     * @param villager The villager.
+     * @param cache The cache of the villager trades. If null, trades are read directly from the {@link PersistentDataContainer}
+     *              through {@link TradeDataCodec}, in which case trades stored only as hashes aren't listed by {@link #getCustomTradesIdentifiers()}.
+     */
+    public VillagerWrapper(@NotNull final Villager villager, @Nullable final VillagerTradeCache cache) {
+        this.villager = villager;
+        this.cache = cache;
     }
 
+    @NotNull
     public List<String> getCustomTradesIdentifiers() {
-        return this.villager.getPersistentDataContainer().get(this.tradesNSK,  PersistentDataType.LIST.strings());
+        if (cache != null)
+            return cache.get(villager).getIdentifiers();
+        return TradeDataCodec.readIdentifiers(this.villager.getPersistentDataContainer());
     }
 
-    @SuppressWarnings("all")
     public void addTradeIdentifier(@NotNull final String ID) {
-        List IDs = new ArrayList(this.villager.getPersistentDataContainer().get(this.tradesNSK, PersistentDataType.LIST.strings()));
-        IDs.add(ID);
-        this.villager.getPersistentDataContainer().set(this.tradesNSK, PersistentDataType.LIST.strings(), IDs);
+        if (cache != null) {
+            cache.add(villager, ID);
+            return;
+        }
+        TradeDataCodec.addIdentifier(this.villager.getPersistentDataContainer(), ID);
     }
 
     public boolean hasCustomTrade(@NotNull final String ID) {
-        return this.getCustomTradesIdentifiers().contains(ID);
+        if (cache != null)
+            return cache.get(villager).contains(ID);
+        return TradeDataCodec.contains(this.villager.getPersistentDataContainer(), ID);
     }
 
     @SuppressWarnings("unused")
     public boolean hasCustomTrade(@NotNull final CustomTrade trade) {
-        return this.getCustomTradesIdentifiers().contains(trade.getID());
+        if (cache != null && trade.getOrdinal() >= 0)
+            return cache.get(villager).contains(trade.getOrdinal());
+        return TradeDataCodec.contains(this.villager.getPersistentDataContainer(), trade.getID());
     }
 
     public void clearTradeData() {
+        if (cache != null)
+            cache.invalidate(villager.getUniqueId());
         this.villager.getPersistentDataContainer().remove(this.tradesNSK);
     }
 
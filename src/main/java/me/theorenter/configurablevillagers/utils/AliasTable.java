@@ -0,0 +1,84 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Vose's alias table for O(1) weighted sampling of trade ordinals.
+ */
+public final class AliasTable {
+    private final int[] members;
+    private final double[] probabilities;
+    private final int[] aliases;
+    private final boolean uniform;
+
+    /**
+     * @param members The ordinals that can be sampled.
+     * @param weights The weights of the members (must be positive).
+     */
+    public AliasTable(@NotNull final int[] members, @NotNull final double[] weights) {
+        int n = members.length;
+        if (n == 0 || weights.length != n)
+            throw new IllegalArgumentException();
+
+        this.members = members;
+        this.probabilities = new double[n];
+        this.aliases = new int[n];
+
+        double totalWeight = 0;
+        boolean uniform = true;
+        for (double weight : weights) {
+            totalWeight += weight;
+            uniform &= weight == weights[0];
+        }
+        this.uniform = uniform;
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0, largeSize = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / totalWeight;
+            if (scaled[i] < 1)
+                small[smallSize++] = i;
+            else large[largeSize++] = i;
+        }
+
+        while (smallSize > 0 && largeSize > 0) {
+            int s = small[--smallSize];
+            int l = large[--largeSize];
+
+            probabilities[s] = scaled[s];
+            aliases[s] = l;
+
+            scaled[l] = (scaled[l] + scaled[s]) - 1;
+            if (scaled[l] < 1)
+                small[smallSize++] = l;
+            else large[largeSize++] = l;
+        }
+
+        // The remaining entries are 1 up to rounding errors
+        while (largeSize > 0)
+            probabilities[large[--largeSize]] = 1;
+        while (smallSize > 0)
+            probabilities[small[--smallSize]] = 1;
+    }
+
+    /**
+     * @return True if all members have the same weight.
+     */
+    public boolean isUniform() {
+        return uniform;
+    }
+
+    /**
+     * @param random The source of randomness.
+     * @return The sampled member.
+     */
+    public int sample(@NotNull final Random random) {
+        int i = random.nextInt(members.length);
+        return random.nextDouble() < probabilities[i] ? members[i] : members[aliases[i]];
+    }
+}
@@ -0,0 +1,81 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for bitsets stored as {@code long[]} words.
+ */
+public final class Bits {
+    public static final long[] EMPTY = new long[0];
+
+    private Bits() {
+    }
+
+    /**
+     * @param bits The number of bits.
+     * @return The number of words required to store the specified number of bits.
+     */
+    public static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * @param words The bitset.
+     * @param bit The bit that must fit into the bitset.
+     * @return The same bitset if it's large enough, otherwise a grown copy of it.
+     */
+    @NotNull
+    public static long[] ensureCapacity(@NotNull final long[] words, int bit) {
+        int required = (bit >>> 6) + 1;
+        if (words.length >= required)
+            return words;
+        return Arrays.copyOf(words, Math.max(required, words.length * 2));
+    }
+
+    public static boolean get(@NotNull final long[] words, int bit) {
+        int word = bit >>> 6;
+        return word < words.length && (words[word] & (1L << bit)) != 0;
+    }
+
+    public static void set(@NotNull final long[] words, int bit) {
+        words[bit >>> 6] |= 1L << bit;
+    }
+
+    public static void clear(@NotNull final long[] words, int bit) {
+        int word = bit >>> 6;
+        if (word < words.length)
+            words[word] &= ~(1L << bit);
+    }
+
+    /**
+     * @return The number of set bits.
+     */
+    public static int cardinality(@NotNull final long[] words) {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * @param words The bitset.
+     * @param length The number of words of the bitset to look at.
+     * @param k The zero-based rank of the set bit.
+     * @return The index of the k-th set bit within the first {@code length} words or -1 if there are less than k + 1 set bits.
+     */
+    public static int select(@NotNull final long[] words, int length, int k) {
+        for (int i = 0; i < length; i++) {
+            long word = words[i];
+            int count = Long.bitCount(word);
+            if (k < count) {
+                for (; k > 0; k--)
+                    word &= word - 1;
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            k -= count;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,126 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Timings of a single plugin load (startup or reload), broken down by phase.
+ * <p></p>
+ * Phases are reported in the order they were first recorded. Recording the same phase
+ * again adds to its time. Build times of individual trades are kept to report the slowest ones.
+ * Every method may be called from any thread.
+ */
+public final class LoadProfile {
+    /** The number of the slowest trades in the report. */
+    public static final int SLOWEST_TRADES = 10;
+
+    private final String name;
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final List<TradeTime> tradeTimes = new ArrayList<>();
+
+    /**
+     * @param name The name of the load, e.g. "startup" or "reload".
+     */
+    public LoadProfile(@NotNull final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds the time to the phase.
+     *
+     * @param phase The name of the phase.
+     * @param nanos The time spent in the phase in nanoseconds.
+     */
+    public synchronized void record(@NotNull final String phase, long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Adds the time since the start to the phase.
+     *
+     * @param phase The name of the phase.
+     * @param start The start of the phase from {@link System#nanoTime()}.
+     * @return The current {@link System#nanoTime()}, so the next phase can start from it.
+     */
+    public long recordSince(@NotNull final String phase, long start) {
+        long now = System.nanoTime();
+        record(phase, now - start);
+        return now;
+    }
+
+    /**
+     * @param ID The identifier of the trade.
+     * @param nanos The time spent building the trade in nanoseconds.
+     */
+    public synchronized void recordTrade(@NotNull final String ID, long nanos) {
+        tradeTimes.add(new TradeTime(ID, nanos));
+    }
+
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The time the load started in milliseconds since the epoch.
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return The sum of the times of all phases in nanoseconds.
+     */
+    public synchronized long getTotal() {
+        long total = 0;
+        for (long nanos : phases.values())
+            total += nanos;
+        return total;
+    }
+
+    /**
+     * @return The report lines: the total, each phase with its share of the total and the slowest trades to build.
+     */
+    @NotNull
+    public synchronized List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        long total = getTotal();
+        report.add(String.format("Load profile (%s): %.1f ms in total", name, total / 1e6));
+        phases.forEach((phase, nanos) -> report.add(String.format("  %s: %.1f ms (%.1f%%)",
+                phase, nanos / 1e6, total > 0 ? nanos * 100.0 / total : 0)));
+
+        if (tradeTimes.isEmpty())
+            return report;
+
+        List<TradeTime> slowest = new ArrayList<>(tradeTimes);
+        slowest.sort(Comparator.comparingLong((TradeTime t) -> t.nanos).reversed());
+        int count = Math.min(SLOWEST_TRADES, slowest.size());
+        report.add(String.format("Slowest %d of %d trades to build:", count, slowest.size()));
+        for (int i = 0; i < count; i++)
+            report.add(String.format("  %d. %s: %.2f ms", i + 1, slowest.get(i).ID, slowest.get(i).nanos / 1e6));
+        return report;
+    }
+
+    /**
+     * Logs the report.
+     *
+     * @param log The logger.
+     */
+    public void log(@NotNull final Logger log) {
+        for (String line : getReport())
+            log.info(line);
+    }
+
+    private static final class TradeTime {
+        private final String ID;
+        private final long nanos;
+
+        private TradeTime(@NotNull final String ID, long nanos) {
+            this.ID = ID;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package me.theorenter.configurablevillagers.utils;
+
+import me.theorenter.configurablevillagers.object.CustomTrade;
+import org.bukkit.entity.Villager;
+import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled cache of the trades loaded from trades.yml.
+ * <p></p>
+ * The cache stores fully resolved trades with their items serialized by the server,
+ * and is only used while the SHA-256 hash of trades.yml and the plugin version match
+ * the ones it was written with.
+ * <p></p>
+ * <b>FORMAT:</b>
+ * <p>int magic, int format version, UTF plugin version, 32 bytes source hash, int trade count</p>
+ * <p>for each trade: UTF ID, double weight, int max uses, float price multiplier, int villager experience,
+ * boolean player experience, result item, int ingredient count and the ingredient items,
+ * professions, levels and types (-1 instead of the count if not set)</p>
+ * <p>Items are written as an int length followed by {@link ItemStack#serializeAsBytes()}.</p>
+ */
+final class TradeCache {
+    private static final int MAGIC = 0x43565443; // "CVTC"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    /**
+     * @param file The cache file.
+     */
+    TradeCache(@NotNull final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param source The content of trades.yml.
+     * @return The SHA-256 hash of the content.
+     */
+    @NotNull
+    static byte[] hash(@NotNull final byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Reads the cached trades without deserializing their items.
+     *
+     * @param sourceHash The hash of the current trades.yml.
+     * @param pluginVersion The current plugin version.
+     * @return The cached trades or null if there is no cache or it was written for another source or plugin version.
+     * @throws IOException if the cache can't be read or is corrupt.
+     */
+    @Nullable
+    List<CompiledTrade> read(@NotNull final byte[] sourceHash, @NotNull final String pluginVersion) throws IOException {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !pluginVersion.equals(in.readUTF()))
+                return null;
+
+            byte[] hash = new byte[sourceHash.length];
+            in.readFully(hash);
+            if (!Arrays.equals(hash, sourceHash))
+                return null;
+
+            int count = in.readInt();
+            List<CompiledTrade> trades = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                trades.add(CompiledTrade.read(in));
+            return trades;
+        }
+    }
+
+    /**
+     * Serializes the items of the trades and writes them to the cache. The previous cache is replaced
+     * only once the new one is fully written. Called asynchronously, so the writes of two reloads are serialized.
+     *
+     * @param sourceHash The hash of the trades.yml from which the trades were loaded.
+     * @param pluginVersion The current plugin version.
+     * @param trades The trades copied by {@link CompiledTrade#snapshot(CustomTrade)}.
+     * @throws IOException if the cache can't be written.
+     */
+    synchronized void write(@NotNull final byte[] sourceHash, @NotNull final String pluginVersion, @NotNull final List<CompiledTrade> trades) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(pluginVersion);
+                out.write(sourceHash);
+                out.writeInt(trades.size());
+                for (CompiledTrade trade : trades)
+                    trade.write(out);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                // Some file systems can't move atomically, a torn cache is still rejected on reading.
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp.toPath());
+            throw ex;
+        }
+    }
+
+    /**
+     * The trade with serialized items.
+     */
+    static final class CompiledTrade {
+        private String ID;
+        private double weight;
+        private int maxUses;
+        private float priceMultiplier;
+        private int villagerExp;
+        private boolean playerExp;
+        private byte[] result;
+        private byte[][] ingredients;
+        private List<String> professions;
+        private List<Integer> levels;
+        private List<String> types;
+        private ItemStack resultItem;
+        private ItemStack[] ingredientItems;
+
+        private CompiledTrade() {
+        }
+
+        /**
+         * Copies the trade with its items, so the copy can be serialized off the main thread
+         * while the loaded trade is used by the server.
+         *
+         * @param trade The loaded trade.
+         * @return The compiled trade, which items aren't serialized yet.
+         */
+        @NotNull
+        static CompiledTrade snapshot(@NotNull final CustomTrade trade) {
+            CompiledTrade compiled = new CompiledTrade();
+            compiled.ID = trade.getID();
+            compiled.weight = trade.getWeight();
+            compiled.maxUses = trade.getMaxUses();
+            compiled.priceMultiplier = trade.getPriceMultiplier();
+            compiled.villagerExp = trade.getVillagerExp();
+            compiled.playerExp = trade.givesPlayerExp();
+            compiled.resultItem = trade.getResult().clone();
+
+            List<ItemStack> ingredients = trade.getIngredients();
+            compiled.ingredientItems = new ItemStack[ingredients.size()];
+            for (int i = 0; i < ingredients.size(); i++)
+                compiled.ingredientItems[i] = ingredients.get(i).clone();
+
+            if (trade.getProfessions() != null) {
+                compiled.professions = new ArrayList<>();
+                for (Villager.Profession profession : trade.getProfessions())
+                    compiled.professions.add(profession.name());
+            }
+            if (trade.getLevels() != null)
+                compiled.levels = new ArrayList<>(trade.getLevels());
+            if (trade.getTypes() != null) {
+                compiled.types = new ArrayList<>();
+                for (Villager.Type type : trade.getTypes())
+                    compiled.types.add(type.name());
+            }
+            return compiled;
+        }
+
+        /**
+         * Serializes the items copied by {@link #snapshot(CustomTrade)}. The copies aren't shared,
+         * so it may be called asynchronously.
+         */
+        void serializeItems() {
+            if (resultItem == null)
+                return;
+            result = resultItem.serializeAsBytes();
+            ingredients = new byte[ingredientItems.length][];
+            for (int i = 0; i < ingredientItems.length; i++)
+                ingredients[i] = ingredientItems[i].serializeAsBytes();
+            resultItem = null;
+            ingredientItems = null;
+        }
+
+        /**
+         * Deserializes the items of the trade, which goes through the server internals.
+         *
+         * @return The trade.
+         */
+        @NotNull
+        CustomTrade toTrade() {
+            CustomTrade trade = new CustomTrade(ID, ItemStack.deserializeBytes(result), maxUses);
+            for (byte[] ingredient : ingredients)
+                trade.addIngredient(ItemStack.deserializeBytes(ingredient));
+            trade.setPriceMultiplier(priceMultiplier);
+            trade.setVillagerExp(villagerExp);
+            trade.setPlayerExp(playerExp);
+            trade.setWeight(weight);
+
+            if (professions != null) {
+                List<Villager.Profession> list = new ArrayList<>(professions.size());
+                for (String profession : professions)
+                    list.add(Villager.Profession.valueOf(profession));
+                trade.setAvailableProfessions(list);
+            }
+            if (levels != null)
+                trade.setTradeLevels(levels);
+            if (types != null) {
+                List<Villager.Type> list = new ArrayList<>(types.size());
+                for (String type : types)
+                    list.add(Villager.Type.valueOf(type));
+                trade.setAvailableTypes(list);
+            }
+            return trade;
+        }
+
+        @NotNull
+        String getID() {
+            return ID;
+        }
+
+        private void write(@NotNull final DataOutputStream out) throws IOException {
+            out.writeUTF(ID);
+            out.writeDouble(weight);
+            out.writeInt(maxUses);
+            out.writeFloat(priceMultiplier);
+            out.writeInt(villagerExp);
+            out.writeBoolean(playerExp);
+            writeBytes(out, result);
+            out.writeInt(ingredients.length);
+            for (byte[] ingredient : ingredients)
+                writeBytes(out, ingredient);
+            writeStrings(out, professions);
+            if (levels == null)
+                out.writeInt(-1);
+            else {
+                out.writeInt(levels.size());
+                for (int level : levels)
+                    out.writeInt(level);
+            }
+            writeStrings(out, types);
+        }
+
+        @NotNull
+        private static CompiledTrade read(@NotNull final DataInputStream in) throws IOException {
+            CompiledTrade compiled = new CompiledTrade();
+            compiled.ID = in.readUTF();
+            compiled.weight = in.readDouble();
+            compiled.maxUses = in.readInt();
+            compiled.priceMultiplier = in.readFloat();
+            compiled.villagerExp = in.readInt();
+            compiled.playerExp = in.readBoolean();
+            compiled.result = readBytes(in);
+            int ingredients = in.readInt();
+            if (ingredients < 0 || ingredients > 2)
+                throw new IOException("Invalid number of ingredients: " + ingredients);
+            compiled.ingredients = new byte[ingredients][];
+            for (int i = 0; i < ingredients; i++)
+                compiled.ingredients[i] = readBytes(in);
+            compiled.professions = readStrings(in);
+            int levels = in.readInt();
+            if (levels >= 0) {
+                compiled.levels = new ArrayList<>(levels);
+                for (int i = 0; i < levels; i++)
+                    compiled.levels.add(in.readInt());
+            }
+            compiled.types = readStrings(in);
+            return compiled;
+        }
+
+        private static void writeBytes(@NotNull final DataOutputStream out, @NotNull final byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @NotNull
+        private static byte[] readBytes(@NotNull final DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0)
+                throw new IOException("Invalid item length: " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private static void writeStrings(@NotNull final DataOutputStream out, @Nullable final List<String> strings) throws IOException {
+            if (strings == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(strings.size());
+            for (String string : strings)
+                out.writeUTF(string);
+        }
+
+        @Nullable
+        private static List<String> readStrings(@NotNull final DataInputStream in) throws IOException {
+            int size = in.readInt();
+            if (size < 0)
+                return null;
+            List<String> strings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                strings.add(in.readUTF());
+            return strings;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary format of the villager trade identifiers.
+ * <p></p>
+ * Villager trades are stored under the same key either as a list of strings (legacy format)
+ * or as a byte array of the following structure:
+ * <pre>
+ * version     byte
+ * hashCount   varint
+ * hashes      varint[hashCount]   stable hashes of the trade identifiers (see {@link #hash(String)})
+ * stringCount varint
+ * strings     (varint length, UTF-8 bytes)[stringCount]   identifiers which hashes collide or aren't registered
+ * </pre>
+ */
+public final class TradeDataCodec {
+    public static final NamespacedKey TRADES_KEY = new NamespacedKey("configurablevillagers", "trades");
+    public static final byte VERSION = 1;
+
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private TradeDataCodec() {
+    }
+
+    /**
+     * @param ID The identifier of the custom trade.
+     * @return The 32-bit FNV-1a hash of the identifier, stable between server restarts and Java versions.
+     */
+    public static int hash(@NotNull final String ID) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < ID.length(); i++) {
+            hash ^= ID.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @param hashes The hashes of the trade identifiers.
+     * @param strings The trade identifiers stored as is.
+     * @return The encoded trade data.
+     */
+    @NotNull
+    public static byte[] encode(@NotNull final int[] hashes, @NotNull final List<String> strings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + hashes.length * 5);
+        out.write(VERSION);
+        writeVarInt(out, hashes.length);
+        for (int hash : hashes)
+            writeVarInt(out, hash);
+        writeVarInt(out, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data The encoded trade data.
+     * @return The decoded trade data.
+     * @throws IllegalArgumentException If the data is corrupted or has an unsupported version.
+     */
+    @NotNull
+    public static Decoded decode(@NotNull final byte[] data) {
+        if (data.length == 0 || data[0] != VERSION)
+            throw new IllegalArgumentException("Unsupported trade data version");
+
+        int[] position = {1};
+        int[] hashes = new int[checkCount(readVarInt(data, position), data.length)];
+        for (int i = 0; i < hashes.length; i++)
+            hashes[i] = readVarInt(data, position);
+
+        String[] strings = new String[checkCount(readVarInt(data, position), data.length)];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readVarInt(data, position);
+            if (length < 0 || position[0] + length > data.length)
+                throw new IllegalArgumentException("Corrupted trade data");
+            strings[i] = new String(data, position[0], length, StandardCharsets.UTF_8);
+            position[0] += length;
+        }
+        return new Decoded(hashes, strings);
+    }
+
+    /**
+     * Copies the trade data in any format from one container to another.
+     *
+     * @param from The source container.
+     * @param to The target container.
+     */
+    public static void copy(@NotNull final PersistentDataContainer from, @NotNull final PersistentDataContainer to) {
+        if (from.has(TRADES_KEY, PersistentDataType.BYTE_ARRAY)) {
+            to.set(TRADES_KEY, PersistentDataType.BYTE_ARRAY, from.get(TRADES_KEY, PersistentDataType.BYTE_ARRAY));
+            return;
+        }
+        List<String> tradeIdentifiers = from.get(TRADES_KEY, PersistentDataType.LIST.strings());
+        if (tradeIdentifiers != null)
+            to.set(TRADES_KEY, PersistentDataType.LIST.strings(), tradeIdentifiers);
+    }
+
+    /**
+     * Reads the trade identifiers in any format without a {@link TradeStorage}.
+     * Identifiers stored in the compact format only as hashes can't be restored and aren't included.
+     *
+     * @param pdc The container of the villager.
+     * @return The stored trade identifiers.
+     * @throws IllegalArgumentException If the compact data is corrupted or has an unsupported version.
+     */
+    @NotNull
+    public static List<String> readIdentifiers(@NotNull final PersistentDataContainer pdc) {
+        if (pdc.has(TRADES_KEY, PersistentDataType.BYTE_ARRAY))
+            return Arrays.asList(decode(pdc.get(TRADES_KEY, PersistentDataType.BYTE_ARRAY)).getStrings());
+        List<String> identifiers = pdc.get(TRADES_KEY, PersistentDataType.LIST.strings());
+        return identifiers != null ? identifiers : Collections.emptyList();
+    }
+
+    /**
+     * @param pdc The container of the villager.
+     * @param ID The identifier of the custom trade.
+     * @return True if the trade is stored in any format, either as is or as its hash.
+     * @throws IllegalArgumentException If the compact data is corrupted or has an unsupported version.
+     */
+    public static boolean contains(@NotNull final PersistentDataContainer pdc, @NotNull final String ID) {
+        if (!pdc.has(TRADES_KEY, PersistentDataType.BYTE_ARRAY))
+            return readIdentifiers(pdc).contains(ID);
+
+        Decoded decoded = decode(pdc.get(TRADES_KEY, PersistentDataType.BYTE_ARRAY));
+        int hash = hash(ID);
+        for (int h : decoded.getHashes())
+            if (h == hash)
+                return true;
+        return Arrays.asList(decoded.getStrings()).contains(ID);
+    }
+
+    /**
+     * Adds the trade identifier without a {@link TradeStorage}, keeping the format of the stored data.
+     * In the compact format the identifier is stored as is, so it doesn't depend on the registered trades.
+     *
+     * @param pdc The container of the villager.
+     * @param ID The identifier of the custom trade.
+     * @throws IllegalArgumentException If the compact data is corrupted or has an unsupported version.
+     */
+    public static void addIdentifier(@NotNull final PersistentDataContainer pdc, @NotNull final String ID) {
+        if (pdc.has(TRADES_KEY, PersistentDataType.BYTE_ARRAY)) {
+            if (contains(pdc, ID))
+                return;
+            Decoded decoded = decode(pdc.get(TRADES_KEY, PersistentDataType.BYTE_ARRAY));
+            List<String> strings = new ArrayList<>(Arrays.asList(decoded.getStrings()));
+            strings.add(ID);
+            pdc.set(TRADES_KEY, PersistentDataType.BYTE_ARRAY, encode(decoded.getHashes(), strings));
+            return;
+        }
+        List<String> identifiers = new ArrayList<>(readIdentifiers(pdc));
+        identifiers.add(ID);
+        pdc.set(TRADES_KEY, PersistentDataType.LIST.strings(), identifiers);
+    }
+
+    private static int checkCount(int count, int dataLength) {
+        // Each element takes at least one byte
+        if (count < 0 || count > dataLength)
+            throw new IllegalArgumentException("Corrupted trade data");
+        return count;
+    }
+
+    private static void writeVarInt(@NotNull final ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(@NotNull final byte[] data, @NotNull final int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= data.length)
+                throw new IllegalArgumentException("Corrupted trade data");
+            byte b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Corrupted trade data");
+    }
+
+    /**
+     * The decoded trade data.
+     */
+    public static final class Decoded {
+        private final int[] hashes;
+        private final String[] strings;
+
+        private Decoded(@NotNull final int[] hashes, @NotNull final String[] strings) {
+            this.hashes = hashes;
+            this.strings = strings;
+        }
+
+        @NotNull
+        public int[] getHashes() {
+            return hashes;
+        }
+
+        @NotNull
+        public String[] getStrings() {
+            return strings;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent SQLite ledger of the custom trades acquired by villagers.
+ * <p></p>
+ * Calls never block: changes are queued and written by a single writer thread,
+ * which flushes the queue in one transaction a few times per second.
+ * Queries run on the same thread, after the changes queued before them.
+ */
+public final class TradeLedger {
+    private static final long FLUSH_INTERVAL_MILLIS = 250;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final File file;
+    private final Logger log;
+    private final ScheduledExecutorService writer;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+    private Connection connection;
+
+    /**
+     * Opens the ledger. The database is opened on the writer thread, so this constructor never blocks.
+     *
+     * @param file The database file.
+     * @param log The logger for errors.
+     */
+    public TradeLedger(@NotNull final File file, @NotNull final Logger log) {
+        this.file = file;
+        this.log = log;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConfigurableVillagers-TradeLedger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(this::open);
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that the villager acquired the trade.
+     *
+     * @param villager The {@link UUID} of the villager.
+     * @param tradeID The identifier of the trade.
+     * @param level The level of the villager for which the trade was acquired.
+     */
+    public void record(@NotNull final UUID villager, @NotNull final String tradeID, int level) {
+        enqueue(new Change(villager, tradeID, level, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes every recorded trade of the villager, e.g. when its trades are rerolled.
+     *
+     * @param villager The {@link UUID} of the villager.
+     */
+    public void forget(@NotNull final UUID villager) {
+        enqueue(new Change(villager, null, 0, 0));
+    }
+
+    /**
+     * Queues the change unless the ledger is closed. Synchronized with {@link #close()}, so every change
+     * queued before the ledger is closed is written by the final flush.
+     */
+    private synchronized void enqueue(@NotNull final Change change) {
+        if (!closed)
+            pending.add(change);
+    }
+
+    /**
+     * @param villager The {@link UUID} of the villager.
+     * @return The future of the recorded trades of the villager in the order they were acquired.
+     */
+    @NotNull
+    public CompletableFuture<List<Entry>> getEntries(@NotNull final UUID villager) {
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        try {
+            writer.execute(() -> {
+                flush();
+                if (connection == null) {
+                    future.completeExceptionally(new SQLException("The trade ledger is not open"));
+                    return;
+                }
+                try (PreparedStatement select = connection.prepareStatement(
+                        "SELECT trade, level, acquired_at FROM trade_ledger WHERE villager = ? ORDER BY acquired_at, rowid")) {
+                    select.setString(1, villager.toString());
+                    List<Entry> entries = new ArrayList<>();
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next())
+                            entries.add(new Entry(villager, rs.getString(1), rs.getInt(2), rs.getLong(3)));
+                    }
+                    future.complete(entries);
+                } catch (SQLException ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Writes the queued changes and closes the database, waiting for the writer thread.
+     */
+    public void close() {
+        if (writer.isShutdown())
+            return;
+        synchronized (this) {
+            closed = true;
+        }
+        writer.execute(() -> {
+            flush();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    log.log(Level.WARNING, "Unable to close the trade ledger", ex);
+                }
+                connection = null;
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                log.warning("The trade ledger didn't finish writing in " + CLOSE_TIMEOUT_SECONDS + " seconds!");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void open() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement st = connection.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                st.execute("CREATE TABLE IF NOT EXISTS trade_ledger ("
+                        + "villager TEXT NOT NULL, "
+                        + "trade TEXT NOT NULL, "
+                        + "level INTEGER NOT NULL, "
+                        + "acquired_at INTEGER NOT NULL)");
+                st.execute("CREATE INDEX IF NOT EXISTS trade_ledger_villager ON trade_ledger (villager)");
+                st.execute("CREATE INDEX IF NOT EXISTS trade_ledger_trade ON trade_ledger (trade)");
+            }
+            connection.setAutoCommit(false);
+        } catch (ClassNotFoundException | SQLException ex) {
+            log.log(Level.SEVERE, "Unable to open the trade ledger, acquired trades won't be recorded", ex);
+            connection = null;
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued changes in one transaction. Runs on the writer thread only.
+     */
+    private void flush() {
+        if (connection == null || pending.isEmpty())
+            return;
+
+        List<Change> changes = new ArrayList<>();
+        Change change;
+        while ((change = pending.poll()) != null)
+            changes.add(change);
+
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO trade_ledger (villager, trade, level, acquired_at) VALUES (?, ?, ?, ?)");
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM trade_ledger WHERE villager = ?")) {
+            for (Change c : changes) {
+                if (c.tradeID == null) {
+                    // Deletes must see the inserts queued before them
+                    insert.executeBatch();
+                    delete.setString(1, c.villager.toString());
+                    delete.executeUpdate();
+                    continue;
+                }
+                insert.setString(1, c.villager.toString());
+                insert.setString(2, c.tradeID);
+                insert.setInt(3, c.level);
+                insert.setLong(4, c.time);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            log.log(Level.WARNING, "Unable to write " + changes.size() + " changes to the trade ledger", ex);
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The queued change of the ledger. A change without trade removes the trades of the villager.
+     */
+    private static final class Change {
+        private final UUID villager;
+        private final String tradeID;
+        private final int level;
+        private final long time;
+
+        private Change(final UUID villager, final String tradeID, int level, long time) {
+            this.villager = villager;
+            this.tradeID = tradeID;
+            this.level = level;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The recorded acquisition of a trade.
+     */
+    public static final class Entry {
+        private final UUID villager;
+        private final String tradeID;
+        private final int level;
+        private final long acquiredAt;
+
+        private Entry(@NotNull final UUID villager, @NotNull final String tradeID, int level, long acquiredAt) {
+            this.villager = villager;
+            this.tradeID = tradeID;
+            this.level = level;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @NotNull
+        public UUID getVillager() {
+            return villager;
+        }
+
+        @NotNull
+        public String getTradeID() {
+            return tradeID;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return The time of the acquisition in milliseconds since the epoch.
+         */
+        public long getAcquiredAt() {
+            return acquiredAt;
+        }
+    }
+}
@@ -20,17 +20,33 @@ import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Loads all trades from the trades.yml config in plugin folder.
  */
 public final class TradeLoader {
+   /** The maximum number of threads which parse and build trades in parallel. */
+   private static final int MAX_LOAD_THREADS = 4;
+   /** The time a batch of trades restored from the cache may take on the main thread per tick. */
+   private static final long MAIN_THREAD_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
    private final ConfigurableVillagers plugin;
-   private final FileConfiguration fileConfig;
+   private final byte[] source;
+   private final TradeCache cache;
 
     /**
      * Constructor of the loader.
@@ -49,50 +65,332 @@ public final class TradeLoader {
            plugin.saveResource("settings" + File.separator + "trades.yml", false);
        }
 
-       this.fileConfig = new YamlConfiguration();
-       this.fileConfig.load(file);
+       this.source = Files.readAllBytes(file.toPath());
+       this.cache = new TradeCache(new File(file.getParentFile(), "trades.cache"));
    }
 
 
     /**
      * Loads all custom recipes from the trades.yml config in plugin folder.
+     * <p></p>
+     * Loading is split into stages:
+     * <p>1. Trades are parsed, validated and built in parallel.</p>
+     * <p>2. Trades with NBT items are built in one batch on the main thread, because
+     * applying NBT goes through the server internals.</p>
+     * <p>3. Trades are registered in the order of the file and the storage index is built.</p>
+     * <p></p>
+     * If trades.yml hasn't changed since the last time all its trades were loaded, the trades
+     * are loaded from the compiled cache next to it instead, without parsing YAML. Their items are restored
+     * on the main thread in batches bounded per tick.
+     * <p></p>
+     * May be called asynchronously, in which case the calling thread waits for the main thread batch.
+     *
+     * @param storage The storage to which the trades are registered.
+     * @param profile The profile to which the time of each stage and the build time of each trade are recorded.
+     * @throws InvalidConfigurationException if trades.yml is not a valid YAML file.
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    public void loadAll(@NotNull final TradeStorage storage, @NotNull final LoadProfile profile) throws InvalidConfigurationException {
+        byte[] sourceHash = TradeCache.hash(source);
+        String pluginVersion = plugin.getPluginMeta().getVersion();
+
+        if (loadCached(storage, profile, sourceHash, pluginVersion))
+            return;
+
+        List<CustomTrade> loaded = loadYaml(storage, profile);
+        if (loaded != null) {
+            long start = System.nanoTime();
+            writeCache(sourceHash, pluginVersion, loaded);
+            profile.recordSince("Trade cache snapshot", start);
+        }
+    }
+
+    /**
+     * Loads the trades from the compiled cache.
+     *
+     * @return True if the trades were loaded, false if there is no valid cache for the current trades.yml.
+     */
+    private boolean loadCached(@NotNull final TradeStorage storage, @NotNull final LoadProfile profile,
+                               @NotNull final byte[] sourceHash, @NotNull final String pluginVersion) {
+        long start = System.nanoTime();
+        long stageStart = start;
+        List<TradeCache.CompiledTrade> compiled;
+        try {
+            compiled = cache.read(sourceHash, pluginVersion);
+        } catch (IOException ex) {
+            plugin.getLogger().warning("Unable to read the compiled trades cache, trades will be loaded from \"trades.yml\": " + ex);
+            return false;
+        }
+        if (compiled == null)
+            return false;
+        stageStart = profile.recordSince("Trade cache read", stageStart);
+
+        CustomTrade[] trades = new CustomTrade[compiled.size()];
+        long[] buildTimes = new long[trades.length];
+        try {
+            runOnMainThreadInBatches(trades.length, i -> {
+                long tradeStart = System.nanoTime();
+                trades[i] = compiled.get(i).toTrade();
+                buildTimes[i] = System.nanoTime() - tradeStart;
+            });
+        } catch (InterruptedException | ExecutionException | CancellationException | RuntimeException ex) {
+            if (ex instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            plugin.getLogger().warning("Unable to restore the compiled trades cache, trades will be loaded from \"trades.yml\": " + ex);
+            return false;
+        }
+        stageStart = profile.recordSince("Trade build", stageStart);
+        for (int i = 0; i < trades.length; i++)
+            profile.recordTrade(trades[i].getID(), buildTimes[i]);
+
+        for (CustomTrade trade : trades) {
+            try {
+                storage.register(trade);
+            } catch (CustomTradeKeyAlreadyExistsException e) {
+                plugin.getLogger().warning("Unable to register \"" + trade.getID() + "\" recipe. Recipe with this ID already registered!");
+            }
+        }
+        stageStart = profile.recordSince("Trade registration", stageStart);
+        storage.buildIndex();
+        profile.recordSince("Index build", stageStart);
+
+        plugin.getLogger().info(String.format("Loaded %d custom trades from the compiled cache of \"trades.yml\" in %.1f ms",
+                trades.length, (System.nanoTime() - start) / 1e6));
+        return true;
+    }
+
+    /**
+     * Writes the compiled cache of the trades loaded from trades.yml.
+     * <p></p>
+     * Only the trades are copied on the calling thread, their items are serialized
+     * and written by an asynchronous task.
+     */
+    private void writeCache(@NotNull final byte[] sourceHash, @NotNull final String pluginVersion, @NotNull final List<CustomTrade> trades) {
+        List<TradeCache.CompiledTrade> compiled = new ArrayList<>(trades.size());
+        for (CustomTrade trade : trades)
+            compiled.add(TradeCache.CompiledTrade.snapshot(trade));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                cache.write(sourceHash, pluginVersion, compiled);
+            } catch (IOException | RuntimeException ex) {
+                plugin.getLogger().warning("Unable to write the compiled trades cache: " + ex);
+            }
+        });
+    }
+
+    /**
+     * Runs the task for each index on the main thread. If called asynchronously, the indexes are split
+     * into batches of at most {@link #MAIN_THREAD_BATCH_NANOS} per tick, and the calling thread waits for them.
+     */
+    private void runOnMainThreadInBatches(int count, @NotNull final IntConsumer task) throws InterruptedException, ExecutionException {
+        if (Bukkit.isPrimaryThread()) {
+            for (int i = 0; i < count; i++)
+                task.accept(i);
+            return;
+        }
+
+        int next = 0;
+        while (next < count) {
+            int from = next;
+            next = Bukkit.getScheduler().callSyncMethod(plugin, () -> {
+                long deadline = System.nanoTime() + MAIN_THREAD_BATCH_NANOS;
+                int i = from;
+                do {
+                    task.accept(i++);
+                } while (i < count && System.nanoTime() < deadline);
+                return i;
+            }).get();
+        }
+    }
+
+    /**
+     * Runs the task on the main thread, waiting for it if called asynchronously.
+     */
+    private void runOnMainThread(@NotNull final Runnable task) throws InterruptedException, ExecutionException {
+        if (Bukkit.isPrimaryThread())
+            task.run();
+        else Bukkit.getScheduler().callSyncMethod(plugin, Executors.callable(task)).get();
+    }
+
+    /**
+     * Loads the trades from trades.yml.
+     *
+     * @return The registered trades if every trade of the file was loaded, otherwise null.
      */
-    public void loadAll() {
+    @Nullable
+    private List<CustomTrade> loadYaml(@NotNull final TradeStorage storage, @NotNull final LoadProfile profile) throws InvalidConfigurationException {
+        long yamlStart = System.nanoTime();
+        FileConfiguration fileConfig = new YamlConfiguration();
+        fileConfig.loadFromString(new String(source, StandardCharsets.UTF_8));
+        profile.recordSince("trades.yml parse", yamlStart);
 
         // Each key is an itemID
         List<Object> customTrades = (List<Object>) fileConfig.getList("trades");
 
         if (customTrades == null || customTrades.isEmpty()) {
             plugin.getLogger().warning("No custom trades were found in the trades.yml file!");
-            return;
+            return null;
         }
 
-        int loadedTrades = 0;
-
-        for (Object recipeObject : customTrades) {
-            if (!(recipeObject instanceof LinkedHashMap)) {
-                plugin.getLogger().warning("Unable to read recipes. Found invalid recipe format");
-                plugin.getLogger().warning("This recipe will be skipped!");
+        // Stage 1: parallel parse, validation and build
+        long stageStart = System.nanoTime();
+        ParsedTrade[] parsedTrades = new ParsedTrade[customTrades.size()];
+        // One core is left to the main thread, which keeps ticking while the plugin reloads
+        int parallelism = Math.max(1, Math.min(MAX_LOAD_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, parsedTrades.length).parallel()
+                    .forEach(i -> parsedTrades[i] = parse(customTrades.get(i)))).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            if (ex instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            plugin.getLogger().severe("An error occurred while loading custom trades:");
+            ex.printStackTrace();
+            return null;
+        } finally {
+            pool.shutdown();
+        }
+        long parseTime = System.nanoTime() - stageStart;
+        profile.record("Trade build", parseTime);
+
+        // Stage 2: batch of trades with NBT items
+        stageStart = System.nanoTime();
+        int deferredTrades = 0;
+        for (ParsedTrade parsed : parsedTrades)
+            if (parsed.deferred) deferredTrades++;
+        if (deferredTrades > 0) {
+            Runnable batch = () -> {
+                for (ParsedTrade parsed : parsedTrades)
+                    if (parsed.deferred) build(parsed);
+            };
+            try {
+                runOnMainThread(batch);
+            } catch (InterruptedException | ExecutionException | CancellationException ex) {
+                if (ex instanceof InterruptedException)
+                    Thread.currentThread().interrupt();
+                plugin.getLogger().severe("An error occurred while loading custom trades with NBT:");
+                ex.printStackTrace();
+                return null;
             }
-            else {
-                LinkedHashMap recipeMap = (LinkedHashMap) recipeObject;
-                String ID = (String) recipeMap.get("ID");
+        }
+        long nbtTime = System.nanoTime() - stageStart;
+        profile.record("Trade NBT items", nbtTime);
+        for (ParsedTrade parsed : parsedTrades)
+            if (parsed.trade != null)
+                profile.recordTrade(parsed.ID, parsed.buildTime);
+
+        // Stage 3: registration
+        stageStart = System.nanoTime();
+        List<CustomTrade> loaded = new ArrayList<>(parsedTrades.length);
+        for (ParsedTrade parsed : parsedTrades) {
+            if (parsed.trade != null) {
                 try {
-                    CustomTrade ct = load(recipeMap, ID);
-                    loadedTrades++;
-                    plugin.getTradeStorage().register(ct);
-                } catch (ResultNotFoundException e) {
-                    plugin.getLogger().warning("Unable to read \"" + ID + "\" recipe. Invalid recipe result!");
-                    e.printStackTrace();
-                } catch (IngredientsNotFoundException e) {
-                    plugin.getLogger().warning("Unable to read \"" + ID + "\" recipe. Invalid recipe ingredients!");
-                    e.printStackTrace();
+                    storage.register(parsed.trade);
+                    loaded.add(parsed.trade);
                 } catch (CustomTradeKeyAlreadyExistsException e) {
-                    plugin.getLogger().warning("Unable to register \"" + ID + "\" recipe. Recipe with this ID already registered!");
+                    plugin.getLogger().warning("Unable to register \"" + parsed.ID + "\" recipe. Recipe with this ID already registered!");
                 }
-            }
+            } else logError(parsed);
         }
+        int loadedTrades = loaded.size();
+        long registerTime = System.nanoTime() - stageStart;
+        profile.record("Trade registration", registerTime);
+
+        stageStart = System.nanoTime();
+        storage.buildIndex();
+        long indexTime = System.nanoTime() - stageStart;
+        profile.record("Index build", indexTime);
+
         plugin.getLogger().info("Loaded " + loadedTrades + " / " + customTrades.size() + " custom trades from \"trades.yml\"");
+        plugin.getLogger().info(String.format("Trade loading stages: parse & build %.1f ms (%d threads), NBT items %.1f ms (%d trades), registration %.1f ms, index %.1f ms",
+                parseTime / 1e6, parallelism, nbtTime / 1e6, deferredTrades, registerTime / 1e6, indexTime / 1e6));
+
+        // Trades with errors are only cached once they are fixed, so their warnings keep showing up
+        return loadedTrades == customTrades.size() ? loaded : null;
+    }
+
+    /**
+     * Parses and builds a single trade. Called in parallel.
+     *
+     * @param recipeObject The element of the trades list.
+     * @return The {@link ParsedTrade}.
+     */
+    @NotNull
+    private ParsedTrade parse(final Object recipeObject) {
+        if (!(recipeObject instanceof LinkedHashMap))
+            return new ParsedTrade(null, null);
+
+        LinkedHashMap recipeMap = (LinkedHashMap) recipeObject;
+        Object ID = recipeMap.get("ID");
+        ParsedTrade parsed = new ParsedTrade(ID instanceof String ? (String) ID : null, recipeMap);
+        if (parsed.ID == null) {
+            parsed.error = new IllegalArgumentException("Missing recipe ID");
+            return parsed;
+        }
+
+        if (hasNbt(recipeMap)) {
+            parsed.deferred = true;
+            return parsed;
+        }
+        build(parsed);
+        return parsed;
+    }
+
+    private void build(@NotNull final ParsedTrade parsed) {
+        long start = System.nanoTime();
+        try {
+            parsed.trade = load(parsed.map, parsed.ID);
+        } catch (ResultNotFoundException | IngredientsNotFoundException | RuntimeException e) {
+            parsed.error = e;
+        }
+        parsed.buildTime = System.nanoTime() - start;
+    }
+
+    private boolean hasNbt(@NotNull final Map<?, ?> recipeMap) {
+        Object result = recipeMap.get("result");
+        if (result instanceof Map && ((Map<?, ?>) result).containsKey("nbt"))
+            return true;
+
+        Object ingredients = recipeMap.get("ingredients");
+        if (ingredients instanceof List) {
+            for (Object ingredient : (List<?>) ingredients)
+                if (ingredient instanceof Map && ((Map<?, ?>) ingredient).containsKey("nbt"))
+                    return true;
+        }
+        return false;
+    }
+
+    private void logError(@NotNull final ParsedTrade parsed) {
+        if (parsed.map == null) {
+            plugin.getLogger().warning("Unable to read recipes. Found invalid recipe format");
+            plugin.getLogger().warning("This recipe will be skipped!");
+        } else if (parsed.error instanceof ResultNotFoundException) {
+            plugin.getLogger().warning("Unable to read \"" + parsed.ID + "\" recipe. Invalid recipe result!");
+            parsed.error.printStackTrace();
+        } else if (parsed.error instanceof IngredientsNotFoundException) {
+            plugin.getLogger().warning("Unable to read \"" + parsed.ID + "\" recipe. Invalid recipe ingredients!");
+            parsed.error.printStackTrace();
+        } else {
+            plugin.getLogger().warning("Unable to read \"" + parsed.ID + "\" recipe. " + parsed.error);
+        }
+    }
+
+    /**
+     * The result of the parallel stage of loading for a single trade.
+     */
+    private static final class ParsedTrade {
+        private final String ID;
+        private final LinkedHashMap<String, Object> map;
+        private boolean deferred;
+        private CustomTrade trade;
+        private Exception error;
+        private long buildTime;
+
+        @SuppressWarnings("unchecked")
+        private ParsedTrade(final String ID, final LinkedHashMap<?, ?> map) {
+            this.ID = ID;
+            this.map = (LinkedHashMap<String, Object>) map;
+        }
     }
 
     /**
@@ -113,6 +411,7 @@ public final class TradeLoader {
         double priceMultiplier = (double) trade.getOrDefault("price-multiplier", 0);
         int villagerExperience = (int) trade.getOrDefault("experience", 0);
         boolean giveExperienceToPlayer = (boolean) trade.getOrDefault("give-experience-to-player", false);
+        double weight = ((Number) trade.getOrDefault("weight", 1)).doubleValue();
 
         // requirement variables
         List<Villager.Profession> professions = toVillagerProfessionList((List<String>) trade.getOrDefault("professions", Arrays.asList(
@@ -152,6 +451,11 @@ public final class TradeLoader {
         if (villagerExperience != 0)
             customTrade.setVillagerExp(villagerExperience);
         customTrade.setPlayerExp(giveExperienceToPlayer);
+        try {
+            customTrade.setWeight(weight);
+        } catch (IllegalArgumentException ex) {
+            plugin.getLogger().warning("Invalid weight of the \"" + ID + "\" recipe! Default weight (1) will be used.");
+        }
         if (!professions.isEmpty())
             customTrade.setAvailableProfessions(professions);
         if (!levels.isEmpty())
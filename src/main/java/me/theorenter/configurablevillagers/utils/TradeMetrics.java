@@ -0,0 +1,124 @@
+package me.theorenter.configurablevillagers.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime metrics of the trade acquisition.
+ * <p></p>
+ * Recording only increments counters, so it's cheap enough for the event handlers.
+ * The metrics are kept from the plugin startup and survive reloads.
+ */
+public final class TradeMetrics {
+    private static final String CSV_HEADER = "time,events_handled,trades_assigned,events_cancelled,"
+            + "handle_ns_mean,handle_ns_p50,handle_ns_p90,handle_ns_p99,handle_ns_max,"
+            + "selections,candidates_mean,candidates_p50,candidates_p99,candidates_max,"
+            + "retries_total,retries_max";
+
+    private final long startedAt = System.currentTimeMillis();
+    private final LongAdder eventsHandled = new LongAdder();
+    private final LongAdder tradesAssigned = new LongAdder();
+    private final LongAdder eventsCancelled = new LongAdder();
+    private final LogHistogram handleTime = new LogHistogram();
+    private final LogHistogram candidates = new LogHistogram();
+    private final LogHistogram retries = new LogHistogram();
+
+    /**
+     * @param nanos The time spent handling a {@link org.bukkit.event.entity.VillagerAcquireTradeEvent}.
+     */
+    public void recordEvent(long nanos) {
+        eventsHandled.increment();
+        handleTime.record(nanos);
+    }
+
+    /**
+     * Records that a custom trade was assigned to a villager.
+     */
+    public void recordAssigned() {
+        tradesAssigned.increment();
+    }
+
+    /**
+     * Records that the event was cancelled because no custom trade was available.
+     */
+    public void recordCancelled() {
+        eventsCancelled.increment();
+    }
+
+    /**
+     * Records a trade selection of {@link TradeStorage#getRandomAvailableTrade(org.bukkit.entity.Villager, int)}.
+     *
+     * @param candidateCount The number of eligible trades the villager doesn't own yet.
+     * @param retryCount The number of draws after the first one.
+     */
+    public void recordSelection(int candidateCount, int retryCount) {
+        candidates.record(candidateCount);
+        retries.record(retryCount);
+    }
+
+    /**
+     * @return The lines of the metrics report.
+     */
+    @NotNull
+    public List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        long uptime = Math.max(1, System.currentTimeMillis() - startedAt);
+        long events = eventsHandled.sum();
+        report.add(String.format("Trade acquisition metrics since the startup (%d min):", uptime / 60_000));
+        report.add(String.format("  Events handled: %d (%.2f/s)", events, events * 1000.0 / uptime));
+        report.add(String.format("  Trades assigned: %d, cancelled without an available trade: %d",
+                tradesAssigned.sum(), eventsCancelled.sum()));
+        report.add(String.format("  Handling time: mean %.1f µs, p50 %.1f µs, p90 %.1f µs, p99 %.1f µs, max %.1f µs",
+                handleTime.getMean() / 1e3, handleTime.getPercentile(50) / 1e3, handleTime.getPercentile(90) / 1e3,
+                handleTime.getPercentile(99) / 1e3, handleTime.getMax() / 1e3));
+        report.add(String.format("  Candidates per selection (%d selections): mean %.1f, p50 %d, p99 %d, max %d",
+                candidates.getCount(), candidates.getMean(), candidates.getPercentile(50),
+                candidates.getPercentile(99), candidates.getMax()));
+        report.add(String.format("  Selection retries: %d in total, max %d", retries.getSum(), retries.getMax()));
+        return report;
+    }
+
+    /**
+     * Appends the current values as a CSV row, writing the header first if the file is new.
+     *
+     * @param file The CSV file.
+     * @throws IOException if the file can't be written.
+     */
+    public void appendCsv(@NotNull final File file) throws IOException {
+        boolean isNew = !file.isFile() || file.length() == 0;
+        String row = String.join(",",
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(eventsHandled.sum()),
+                String.valueOf(tradesAssigned.sum()),
+                String.valueOf(eventsCancelled.sum()),
+                String.format(Locale.ROOT, "%.0f", handleTime.getMean()),
+                String.valueOf(handleTime.getPercentile(50)),
+                String.valueOf(handleTime.getPercentile(90)),
+                String.valueOf(handleTime.getPercentile(99)),
+                String.valueOf(handleTime.getMax()),
+                String.valueOf(candidates.getCount()),
+                String.format(Locale.ROOT, "%.2f", candidates.getMean()),
+                String.valueOf(candidates.getPercentile(50)),
+                String.valueOf(candidates.getPercentile(99)),
+                String.valueOf(candidates.getMax()),
+                String.valueOf(retries.getSum()),
+                String.valueOf(retries.getMax()));
+
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (isNew)
+                out.write(CSV_HEADER + "\n");
+            out.write(row + "\n");
+        }
+    }
+}
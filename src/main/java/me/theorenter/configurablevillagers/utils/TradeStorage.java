@@ -3,51 +3,87 @@ package me.theorenter.configurablevillagers.utils;
 import me.theorenter.configurablevillagers.exceptions.CustomTradeKeyAlreadyExistsException;
 import me.theorenter.configurablevillagers.exceptions.NoSuchCustomTradeKeyException;
 import me.theorenter.configurablevillagers.object.CustomTrade;
-import me.theorenter.configurablevillagers.object.VillagerWrapper;
 import org.bukkit.entity.Villager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
 
 /**
  * Storage of all custom merchant recipes.
  * Recipes are sent here in the process of being read by {@link TradeLoader}.
  */
 public final class TradeStorage {
-    private final Map<String, CustomTrade> MERCHANT_TRADES = new HashMap<>();
+    private static final int MAX_LEVEL = 5;
+
+    private final Map<String, CustomTrade> MERCHANT_TRADES = new LinkedHashMap<>();
+
+    /**
+     * Registered trades indexed by their ordinal.
+     */
+    private CustomTrade[] TRADES = new CustomTrade[16];
+    private int nextOrdinal = 0;
+
+    /**
+     * Bitsets of trade ordinals indexed by the ordinal of the profession, type and level - 1.
+     */
+    private final long[][] PROFESSION_INDEX = new long[Villager.Profession.values().length][];
+    private final long[][] TYPE_INDEX = new long[Villager.Type.values().length][];
+    private final long[][] LEVEL_INDEX = new long[MAX_LEVEL][];
+
+    /**
+     * Bitsets of eligible trade ordinals indexed by [type][profession][level - 1].
+     * Bitsets of this table are shared and must never be modified.
+     */
+    private long[][][][] ELIGIBILITY_TABLE;
+    private int[][][] ELIGIBILITY_SIZES;
+    private AliasTable[][][] ALIAS_TABLES;
+
+    /**
+     * Scratch bitset reused by {@link #getRandomAvailableTrade(Villager, int)}, which is only called from the main thread.
+     */
+    private long[] candidatesScratch = Bits.EMPTY;
+
+    /**
+     * Trades by the stable hash of their identifiers (see {@link TradeDataCodec#hash(String)}).
+     * Hashes shared by several trades are kept out of this map, in {@link #COLLIDING_TRADES}.
+     */
+    private final Map<Integer, CustomTrade> HASH_INDEX = new HashMap<>();
+    private final Map<Integer, List<CustomTrade>> COLLIDING_TRADES = new HashMap<>();
+
+    private final Logger log;
+
+    private final VillagerTradeCache VILLAGER_CACHE;
+
+    /**
+     * Metrics to which every trade selection is recorded, or null.
+     */
+    private TradeMetrics metrics;
 
-    private final Map<Villager.Profession, HashSet<String>> PROFESSION_INDEX_MAP = new HashMap<>();
-    private final Map<Villager.Type, HashSet<String>> TYPE_INDEX_MAP = new HashMap<>();
-    private final Map<Integer, HashSet<String>> LEVEL_INDEX_MAP = new HashMap<>();
     public TradeStorage() {
-        PROFESSION_INDEX_MAP.put(Villager.Profession.ARMORER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.BUTCHER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.CLERIC, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.CARTOGRAPHER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.FARMER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.FISHERMAN, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.FLETCHER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.LEATHERWORKER, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.LIBRARIAN, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.MASON, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.SHEPHERD, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.TOOLSMITH, new HashSet<>());
-        PROFESSION_INDEX_MAP.put(Villager.Profession.WEAPONSMITH, new HashSet<>());
-
-        TYPE_INDEX_MAP.put(Villager.Type.DESERT, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.JUNGLE, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.SNOW, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.PLAINS, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.SAVANNA, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.SWAMP, new HashSet<>());
-        TYPE_INDEX_MAP.put(Villager.Type.TAIGA, new HashSet<>());
-
-        LEVEL_INDEX_MAP.put(1, new HashSet<>());
-        LEVEL_INDEX_MAP.put(2, new HashSet<>());
-        LEVEL_INDEX_MAP.put(3, new HashSet<>());
-        LEVEL_INDEX_MAP.put(4, new HashSet<>());
-        LEVEL_INDEX_MAP.put(5, new HashSet<>());
+        this(false);
+    }
+
+    /**
+     * @param compactVillagerData Whether villager trades are written in the compact format of {@link TradeDataCodec}.
+     */
+    public TradeStorage(boolean compactVillagerData) {
+        this(compactVillagerData, Logger.getLogger(TradeStorage.class.getName()));
+    }
+
+    /**
+     * @param compactVillagerData Whether villager trades are written in the compact format of {@link TradeDataCodec}.
+     * @param log The logger to which problems with the stored villager trades are reported.
+     */
+    public TradeStorage(boolean compactVillagerData, @NotNull final Logger log) {
+        this.log = log;
+        this.VILLAGER_CACHE = new VillagerTradeCache(this, compactVillagerData, log);
+        Arrays.fill(PROFESSION_INDEX, Bits.EMPTY);
+        Arrays.fill(TYPE_INDEX, Bits.EMPTY);
+        Arrays.fill(LEVEL_INDEX, Bits.EMPTY);
+        buildIndex();
     }
 
      /**
@@ -60,26 +96,40 @@ public final class TradeStorage {
             throw new CustomTradeKeyAlreadyExistsException();
         }
 
+        int ordinal = nextOrdinal++;
+        if (ordinal == TRADES.length)
+            TRADES = Arrays.copyOf(TRADES, TRADES.length * 2);
+        TRADES[ordinal] = customTrade;
+        customTrade.setOrdinal(ordinal);
         MERCHANT_TRADES.put(recipeID, customTrade);
 
+        indexHash(customTrade);
+
         // professions
         if (customTrade.getProfessions() != null)
-            customTrade.getProfessions().forEach(profession -> PROFESSION_INDEX_MAP.get(profession).add(recipeID));
+            customTrade.getProfessions().forEach(profession -> setIndexBit(PROFESSION_INDEX, profession.ordinal(), ordinal));
         else {
-            PROFESSION_INDEX_MAP.forEach((k, v) -> v.add(recipeID));
+            for (Villager.Profession profession : Villager.Profession.values())
+                if (profession != Villager.Profession.NONE && profession != Villager.Profession.NITWIT)
+                    setIndexBit(PROFESSION_INDEX, profession.ordinal(), ordinal);
         }
         // types
         if (customTrade.getTypes() != null)
-            customTrade.getTypes().forEach(type -> TYPE_INDEX_MAP.get(type).add(recipeID));
+            customTrade.getTypes().forEach(type -> setIndexBit(TYPE_INDEX, type.ordinal(), ordinal));
         else {
-            TYPE_INDEX_MAP.forEach((k, v) -> v.add(recipeID));
+            for (int i = 0; i < TYPE_INDEX.length; i++)
+                setIndexBit(TYPE_INDEX, i, ordinal);
         }
         // levels
-        if (customTrade.getLevels() != null)
-            customTrade.getLevels().forEach(level -> LEVEL_INDEX_MAP.get(level).add(recipeID));
-        else {
-            LEVEL_INDEX_MAP.forEach((k, v) -> v.add(recipeID));
+        if (customTrade.getLevels() != null) {
+            for (int level : customTrade.getLevels())
+                if (level >= 1 && level <= MAX_LEVEL)
+                    setIndexBit(LEVEL_INDEX, level - 1, ordinal);
+        } else {
+            for (int i = 0; i < LEVEL_INDEX.length; i++)
+                setIndexBit(LEVEL_INDEX, i, ordinal);
         }
+        this.ELIGIBILITY_TABLE = null;
     }
 
     /**
@@ -96,10 +146,18 @@ public final class TradeStorage {
      */
     @SuppressWarnings("unused")
     public void unregister(@NotNull final String recipeID) throws NoSuchCustomTradeKeyException {
-        if (!MERCHANT_TRADES.containsKey(recipeID))
+        CustomTrade customTrade = MERCHANT_TRADES.remove(recipeID);
+        if (customTrade == null)
             throw new NoSuchCustomTradeKeyException();
 
-        MERCHANT_TRADES.remove(recipeID);
+        unindexHash(customTrade);
+
+        // The trade stays in TRADES, so ordinals cached by the villager cache can still be resolved to identifiers
+        int ordinal = customTrade.getOrdinal();
+        for (long[] index : PROFESSION_INDEX) Bits.clear(index, ordinal);
+        for (long[] index : TYPE_INDEX) Bits.clear(index, ordinal);
+        for (long[] index : LEVEL_INDEX) Bits.clear(index, ordinal);
+        this.ELIGIBILITY_TABLE = null;
     }
 
     /**
@@ -116,76 +174,294 @@ public final class TradeStorage {
         return c;
     }
 
-    @SuppressWarnings("unused")
-    private Set<String> getAvailableTradesIdentifiers(@NotNull final Villager.Type type, @NotNull final Villager.Profession profession, int level, @NotNull List<String> currentTrades) {
-        Set<String> typeIndex = TYPE_INDEX_MAP.get(type);
-        Set<String> professionIndex = PROFESSION_INDEX_MAP.get(profession);
-        Set<String> lvlIndex = LEVEL_INDEX_MAP.get(level);
+    /**
+     * @param recipeID The string identifier of the merchant recipe.
+     * @return The {@link CustomTrade} or null if there is no custom trade with specified recipeID.
+     */
+    @Nullable
+    CustomTrade find(@NotNull final String recipeID) {
+        return MERCHANT_TRADES.get(recipeID);
+    }
+
+    /**
+     * @param hash The stable hash of the custom trade identifier.
+     * @return The registered trades with specified hash. There are several of them only if their hashes collide.
+     */
+    @NotNull
+    List<CustomTrade> findAllByHash(int hash) {
+        CustomTrade trade = HASH_INDEX.get(hash);
+        if (trade != null)
+            return Collections.singletonList(trade);
+        return COLLIDING_TRADES.getOrDefault(hash, Collections.emptyList());
+    }
+
+    /**
+     * @param hash The stable hash of the custom trade identifier.
+     * @return True if exactly one registered trade has the hash, so the trade may be stored as its hash.
+     */
+    boolean isUniqueHash(int hash) {
+        return HASH_INDEX.containsKey(hash);
+    }
+
+    private void indexHash(@NotNull final CustomTrade customTrade) {
+        int hash = TradeDataCodec.hash(customTrade.getID());
+        List<CustomTrade> colliding = COLLIDING_TRADES.get(hash);
+        CustomTrade previous = HASH_INDEX.remove(hash);
+        if (previous != null) {
+            colliding = new ArrayList<>(2);
+            colliding.add(previous);
+            COLLIDING_TRADES.put(hash, colliding);
+        }
+        if (colliding == null) {
+            HASH_INDEX.put(hash, customTrade);
+            return;
+        }
+
+        colliding.add(customTrade);
+        List<String> identifiers = new ArrayList<>(colliding.size());
+        for (CustomTrade trade : colliding)
+            identifiers.add(trade.getID());
+        log.warning("Custom trades " + identifiers + " have the same hash, villagers will store them as identifiers.");
+    }
+
+    private void unindexHash(@NotNull final CustomTrade customTrade) {
+        int hash = TradeDataCodec.hash(customTrade.getID());
+        if (HASH_INDEX.remove(hash, customTrade))
+            return;
+
+        List<CustomTrade> colliding = COLLIDING_TRADES.get(hash);
+        if (colliding == null || !colliding.remove(customTrade))
+            return;
+        if (colliding.size() == 1) {
+            COLLIDING_TRADES.remove(hash);
+            HASH_INDEX.put(hash, colliding.get(0));
+        }
+    }
+
+    /**
+     * @param ordinal The ordinal of the custom trade.
+     * @return The {@link CustomTrade} with specified ordinal.
+     */
+    @NotNull
+    CustomTrade getByOrdinal(int ordinal) {
+        return TRADES[ordinal];
+    }
 
-        Set<String> availableIdentifiers = new HashSet<>(professionIndex);
-        availableIdentifiers.retainAll(typeIndex);
-        availableIdentifiers.retainAll(lvlIndex);
-        availableIdentifiers.retainAll(new HashSet<>(currentTrades));
-        return availableIdentifiers;
+    /**
+     * @param metrics The metrics to which every trade selection is recorded or null to stop recording.
+     */
+    public void setMetrics(@Nullable final TradeMetrics metrics) {
+        this.metrics = metrics;
     }
 
+    /**
+     * @return The cache of the trades owned by the loaded villagers.
+     */
     @NotNull
-    private Set<String> getAvailableTradesIdentifiers(@NotNull final Villager.Type type, @NotNull final Villager.Profession profession, int level) {
-        Set<String> typeIndex = TYPE_INDEX_MAP.get(type);
-        Set<String> professionIndex = PROFESSION_INDEX_MAP.get(profession);
-        Set<String> lvlIndex = LEVEL_INDEX_MAP.get(level);
+    public VillagerTradeCache getVillagerCache() {
+        return VILLAGER_CACHE;
+    }
 
-        Set<String> availableIdentifiers = new HashSet<>(professionIndex);
-        availableIdentifiers.retainAll(typeIndex);
-        availableIdentifiers.retainAll(lvlIndex);
-        return availableIdentifiers;
+    private static void setIndexBit(@NotNull final long[][] index, int key, int ordinal) {
+        index[key] = Bits.ensureCapacity(index[key], ordinal);
+        Bits.set(index[key], ordinal);
     }
 
-    @Nullable
-    public CustomTrade getRandomAvailableTrade(@NotNull final Villager villager) {
+    /**
+     * Builds the (type, profession, level) eligibility table from all registered trades.
+     * <p></p>
+     * Called by {@link TradeLoader} once all trades are registered. If the storage is
+     * modified afterwards, the table is rebuilt on the next lookup.
+     */
+    public void buildIndex() {
+        int words = Bits.wordsFor(nextOrdinal);
+        long[][][][] table = new long[TYPE_INDEX.length][PROFESSION_INDEX.length][MAX_LEVEL][];
+        int[][][] sizes = new int[TYPE_INDEX.length][PROFESSION_INDEX.length][MAX_LEVEL];
+        AliasTable[][][] aliasTables = new AliasTable[TYPE_INDEX.length][PROFESSION_INDEX.length][MAX_LEVEL];
 
-        ArrayList<String> availableTrades = new ArrayList<>(getAvailableTradesIdentifiers(villager.getVillagerType(), villager.getProfession(), villager.getVillagerLevel()));
+        // Many buckets contain the same trades, so they share the bitset and the alias table
+        Map<BitSet, long[]> sharedBuckets = new HashMap<>();
+        Map<BitSet, AliasTable> sharedAliasTables = new HashMap<>();
 
-        VillagerWrapper vw = new VillagerWrapper(villager);
+        for (int t = 0; t < TYPE_INDEX.length; t++) {
+            for (int p = 0; p < PROFESSION_INDEX.length; p++) {
+                for (int l = 0; l < MAX_LEVEL; l++) {
+                    long[] typeIndex = TYPE_INDEX[t];
+                    long[] professionIndex = PROFESSION_INDEX[p];
+                    long[] levelIndex = LEVEL_INDEX[l];
+                    int length = Math.min(words, Math.min(typeIndex.length, Math.min(professionIndex.length, levelIndex.length)));
 
-        if (availableTrades.size() == 0) return null;
+                    long[] bucket = new long[length];
+                    for (int w = 0; w < length; w++)
+                        bucket[w] = typeIndex[w] & professionIndex[w] & levelIndex[w];
 
-        CustomTrade trade = null;
-        while (trade == null && !availableTrades.isEmpty()) {
-            int rand = new Random().nextInt(availableTrades.size());
-            String ID = availableTrades.get(rand);
-            CustomTrade candidate = MERCHANT_TRADES.get(ID);
+                    int size = Bits.cardinality(bucket);
+                    sizes[t][p][l] = size;
+                    if (size == 0) {
+                        table[t][p][l] = Bits.EMPTY;
+                        continue;
+                    }
 
-            if (!vw.hasCustomTrade(ID))
-                trade = candidate;
-            else {
-                availableTrades.remove(rand);
+                    BitSet key = BitSet.valueOf(bucket);
+                    table[t][p][l] = sharedBuckets.computeIfAbsent(key, k -> bucket);
+                    aliasTables[t][p][l] = sharedAliasTables.computeIfAbsent(key, k -> buildAliasTable(bucket, size));
+                }
             }
         }
-        return trade;
+        this.ELIGIBILITY_SIZES = sizes;
+        this.ALIAS_TABLES = aliasTables;
+        this.ELIGIBILITY_TABLE = table;
+    }
+
+    @NotNull
+    private AliasTable buildAliasTable(@NotNull final long[] bucket, int size) {
+        int[] members = new int[size];
+        double[] weights = new double[size];
+        for (int i = 0, ordinal = 0; i < size; i++, ordinal++) {
+            while (!Bits.get(bucket, ordinal)) ordinal++;
+            members[i] = ordinal;
+            weights[i] = TRADES[ordinal].getWeight();
+        }
+        return new AliasTable(members, weights);
+    }
+
+    /**
+     * @return The shared bitset of trade ordinals available for the specified villager properties. <b>Must not be modified.</b>
+     */
+    @NotNull
+    private long[] getAvailableTrades(@NotNull final Villager.Type type, @NotNull final Villager.Profession profession, int level) {
+        if (level < 1 || level > MAX_LEVEL)
+            return Bits.EMPTY;
+
+        long[][][][] table = this.ELIGIBILITY_TABLE;
+        if (table == null) {
+            buildIndex();
+            table = this.ELIGIBILITY_TABLE;
+        }
+        return table[type.ordinal()][profession.ordinal()][level - 1];
+    }
+
+    private int getAvailableTradesCount(@NotNull final Villager.Type type, @NotNull final Villager.Profession profession, int level) {
+        if (level < 1 || level > MAX_LEVEL)
+            return 0;
+        if (this.ELIGIBILITY_TABLE == null)
+            buildIndex();
+        return ELIGIBILITY_SIZES[type.ordinal()][profession.ordinal()][level - 1];
     }
 
+    @Nullable
+    public CustomTrade getRandomAvailableTrade(@NotNull final Villager villager) {
+        return getRandomAvailableTrade(villager, villager.getVillagerLevel());
+    }
+
+    public boolean isExhausted(@NotNull final Villager villager) {
+        return isExhausted(villager, villager.getVillagerLevel());
+    }
+
+    /**
+     * Checks whether the villager already owns every trade it can acquire at the specified level.
+     * The owned trades are counted once per eligibility bucket of the villager, so repeated checks are O(1).
+     * <p></p>
+     * <b>NOTE:</b> Must be called from the main thread.
+     *
+     * @param villager The villager.
+     * @param lvl The villager level.
+     * @return True if {@link #getRandomAvailableTrade(Villager, int)} would return null.
+     */
+    public boolean isExhausted(@NotNull final Villager villager, int lvl) {
+        Villager.Type type = villager.getVillagerType();
+        Villager.Profession profession = villager.getProfession();
+
+        int availableCount = getAvailableTradesCount(type, profession, lvl);
+        if (availableCount == 0) return true;
+        return VILLAGER_CACHE.get(villager).countIn(getAvailableTrades(type, profession, lvl)) >= availableCount;
+    }
+
+    /**
+     * Picks a random trade the villager can acquire at the specified level and doesn't own yet.
+     * The chance of each trade is proportional to its weight.
+     * <p></p>
+     * <b>NOTE:</b> Must be called from the main thread.
+     *
+     * @param villager The villager.
+     * @param lvl The villager level for which the trade is picked.
+     * @return The {@link CustomTrade} or null if the villager already owns all eligible trades.
+     */
     @Nullable
     public CustomTrade getRandomAvailableTrade(@NotNull final Villager villager, int lvl) {
+        Villager.Type type = villager.getVillagerType();
+        Villager.Profession profession = villager.getProfession();
+
+        int availableCount = getAvailableTradesCount(type, profession, lvl);
+        if (availableCount == 0) {
+            recordSelection(0, 0);
+            return null;
+        }
 
-        ArrayList<String> availableTrades = new ArrayList<>(getAvailableTradesIdentifiers(villager.getVillagerType(), villager.getProfession(), lvl));
+        long[] eligibleTrades = getAvailableTrades(type, profession, lvl);
+        VillagerTradeCache.OwnedTrades owned = VILLAGER_CACHE.get(villager);
+        availableCount -= owned.countIn(eligibleTrades);
+        if (availableCount <= 0) {
+            recordSelection(0, 0);
+            return null;
+        }
 
-        VillagerWrapper vw = new VillagerWrapper(villager);
+        int length = eligibleTrades.length;
+        if (candidatesScratch.length < length)
+            candidatesScratch = new long[length];
+        long[] candidates = candidatesScratch;
+        System.arraycopy(eligibleTrades, 0, candidates, 0, length);
 
-        if (availableTrades.size() == 0) return null;
+        // Filter out already owned trades up front
+        for (int ordinal : owned.getOrdinals())
+            if (Bits.get(eligibleTrades, ordinal))
+                Bits.clear(candidates, ordinal);
 
-        CustomTrade trade = null;
-        while (trade == null && !availableTrades.isEmpty()) {
-            int rand = new Random().nextInt(availableTrades.size());
-            String ID = availableTrades.get(rand);
-            CustomTrade candidate = MERCHANT_TRADES.get(ID);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        AliasTable aliasTable = ALIAS_TABLES[type.ordinal()][profession.ordinal()][lvl - 1];
+        int ordinal = aliasTable.sample(random);
+        if (Bits.get(candidates, ordinal)) {
+            recordSelection(availableCount, 0);
+            return TRADES[ordinal];
+        }
+
+        // The sampled trade is already owned, so pick one of the remaining candidates by weight.
+        // Combined with the alias draw above this keeps the chances proportional to the weights.
+        recordSelection(availableCount, 1);
+        if (aliasTable.isUniform()) {
+            // Equal weights need no weight sums, the k-th remaining candidate is picked directly
+            ordinal = Bits.select(candidates, length, random.nextInt(availableCount));
+            if (ordinal >= 0)
+                return TRADES[ordinal];
+        }
+        return getRandomWeightedTrade(candidates, length, random);
+    }
+
+    private void recordSelection(int candidateCount, int retryCount) {
+        TradeMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordSelection(candidateCount, retryCount);
+    }
+
+    @NotNull
+    private CustomTrade getRandomWeightedTrade(@NotNull final long[] candidates, int length, @NotNull final Random random) {
+        double totalWeight = 0;
+        for (int w = 0; w < length; w++) {
+            for (long word = candidates[w]; word != 0; word &= word - 1)
+                totalWeight += TRADES[(w << 6) + Long.numberOfTrailingZeros(word)].getWeight();
+        }
 
-            if (!vw.hasCustomTrade(ID))
-                trade = candidate;
-            else {
-                availableTrades.remove(rand);
+        double target = random.nextDouble() * totalWeight;
+        CustomTrade last = null;
+        for (int w = 0; w < length; w++) {
+            for (long word = candidates[w]; word != 0; word &= word - 1) {
+                last = TRADES[(w << 6) + Long.numberOfTrailingZeros(word)];
+                target -= last.getWeight();
+                if (target < 0)
+                    return last;
             }
         }
-        return trade;
+        // Rounding errors
+        return last;
     }
 }
@@ -0,0 +1,294 @@
+package me.theorenter.configurablevillagers.utils;
+
+import me.theorenter.configurablevillagers.object.CustomTrade;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Villager;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the custom trades owned by the loaded villagers.
+ * <p></p>
+ * The trade identifiers of a villager are read from its {@link PersistentDataContainer} once and then kept
+ * in memory as a sorted set of trade ordinals of the {@link TradeStorage} until the villager is removed from the world.
+ * Changes are written back to the {@link PersistentDataContainer} once per change.
+ * <p></p>
+ * Trades are written either as a list of identifiers or in the compact format of {@link TradeDataCodec}.
+ * Villagers stored in the other format are migrated the first time they are loaded into the cache,
+ * except villagers with hashes of unregistered trades, which stay in the compact format.
+ * Compact data which can't be decoded is kept as is and is never written over, until the trades of the villager are cleared.
+ * <p></p>
+ * <b>NOTE:</b> Must be used from the main thread only.
+ */
+public final class VillagerTradeCache {
+    private static final int[] NO_ORDINALS = new int[0];
+    private static final String[] NO_IDENTIFIERS = new String[0];
+
+    private final NamespacedKey tradesNSK = TradeDataCodec.TRADES_KEY;
+    private final TradeStorage storage;
+    private final boolean compact;
+    private final Logger log;
+    private final Map<UUID, OwnedTrades> OWNED_TRADES = new HashMap<>();
+
+    /**
+     * @param storage The storage which ordinals are used by the cache.
+     * @param compact Whether trades are written in the compact format of {@link TradeDataCodec}.
+     * @param log The logger to which unreadable villager data is reported.
+     */
+    public VillagerTradeCache(@NotNull final TradeStorage storage, boolean compact, @NotNull final Logger log) {
+        this.storage = storage;
+        this.compact = compact;
+        this.log = log;
+    }
+
+    /**
+     * @param villager The villager.
+     * @return The trades owned by the villager.
+     */
+    @NotNull
+    public OwnedTrades get(@NotNull final Villager villager) {
+        OwnedTrades owned = OWNED_TRADES.get(villager.getUniqueId());
+        if (owned == null) {
+            owned = load(villager);
+            OWNED_TRADES.put(villager.getUniqueId(), owned);
+        }
+        return owned;
+    }
+
+    /**
+     * Adds the trade identifier to the villager and writes its trades to the {@link PersistentDataContainer}.
+     *
+     * @param villager The villager.
+     * @param ID The identifier of the custom trade.
+     */
+    public void add(@NotNull final Villager villager, @NotNull final String ID) {
+        OwnedTrades owned = get(villager);
+        owned.add(ID);
+
+        write(villager.getPersistentDataContainer(), owned);
+    }
+
+    /**
+     * Removes the villager from the cache.
+     *
+     * @param uuid The unique identifier of the villager.
+     */
+    public void invalidate(@NotNull final UUID uuid) {
+        OWNED_TRADES.remove(uuid);
+    }
+
+    public void clear() {
+        OWNED_TRADES.clear();
+    }
+
+    public int size() {
+        return OWNED_TRADES.size();
+    }
+
+    @NotNull
+    private OwnedTrades load(@NotNull final Villager villager) {
+        PersistentDataContainer pdc = villager.getPersistentDataContainer();
+        OwnedTrades owned = new OwnedTrades();
+
+        if (pdc.has(tradesNSK, PersistentDataType.BYTE_ARRAY)) {
+            TradeDataCodec.Decoded decoded;
+            try {
+                decoded = TradeDataCodec.decode(pdc.get(tradesNSK, PersistentDataType.BYTE_ARRAY));
+            } catch (IllegalArgumentException ex) {
+                log.warning("Unable to read the custom trades of the villager " + villager.getUniqueId()
+                        + ", its data is kept as is and new trades won't be saved to it: " + ex.getMessage());
+                owned.unreadable = true;
+                return owned;
+            }
+            boolean ambiguous = false;
+            for (int hash : decoded.getHashes()) {
+                List<CustomTrade> trades = storage.findAllByHash(hash);
+                if (trades.isEmpty()) {
+                    owned.addUnknownHash(hash);
+                    continue;
+                }
+                if (trades.size() > 1) {
+                    // The hash was written before another trade with the same hash was registered. Which of them
+                    // is owned can't be told, so the villager owns all of them rather than acquiring one twice
+                    List<String> identifiers = new ArrayList<>(trades.size());
+                    for (CustomTrade trade : trades)
+                        identifiers.add(trade.getID());
+                    log.warning("The villager " + villager.getUniqueId() + " has a trade hash shared by the custom trades "
+                            + identifiers + ", all of them are considered owned.");
+                    ambiguous = true;
+                }
+                for (CustomTrade trade : trades)
+                    owned.addOrdinal(trade.getOrdinal());
+            }
+            for (String ID : decoded.getStrings())
+                owned.add(ID);
+
+            // Colliding trades are written as identifiers, so the ambiguous hash is resolved only once
+            if (ambiguous || !compact && owned.unknownHashes.length == 0)
+                write(pdc, owned);
+            return owned;
+        }
+
+        List<String> identifiers = pdc.get(tradesNSK, PersistentDataType.LIST.strings());
+        if (identifiers == null)
+            return owned;
+
+        for (String ID : identifiers)
+            owned.add(ID);
+
+        // Empty lists left by older versions aren't worth a write
+        if (compact && owned.size() > 0)
+            write(pdc, owned);
+        return owned;
+    }
+
+    private void write(@NotNull final PersistentDataContainer pdc, @NotNull final OwnedTrades owned) {
+        // The stored trades can't be merged with unreadable data, so it isn't replaced
+        if (owned.unreadable)
+            return;
+
+        // Hashes of unregistered trades can't be turned back into identifiers, so villagers
+        // with such trades keep the compact format until the trades are registered again
+        if (!compact && owned.unknownHashes.length == 0) {
+            pdc.set(tradesNSK, PersistentDataType.LIST.strings(), owned.getIdentifiers());
+            return;
+        }
+
+        int[] hashes = new int[owned.ordinals.length + owned.unknownHashes.length];
+        int hashCount = 0;
+        List<String> strings = new ArrayList<>(Arrays.asList(owned.unknownIdentifiers));
+        for (int ordinal : owned.ordinals) {
+            String ID = storage.getByOrdinal(ordinal).getID();
+            int hash = TradeDataCodec.hash(ID);
+            if (storage.isUniqueHash(hash))
+                hashes[hashCount++] = hash;
+            else strings.add(ID);
+        }
+        for (int hash : owned.unknownHashes)
+            hashes[hashCount++] = hash;
+
+        pdc.set(tradesNSK, PersistentDataType.BYTE_ARRAY, TradeDataCodec.encode(Arrays.copyOf(hashes, hashCount), strings));
+    }
+
+    /**
+     * The trades owned by a villager.
+     */
+    public final class OwnedTrades {
+        private int[] ordinals = NO_ORDINALS;
+        // Identifiers and hashes of the trades that are not registered in the storage (e.g. removed from trades.yml)
+        private String[] unknownIdentifiers = NO_IDENTIFIERS;
+        private int[] unknownHashes = NO_ORDINALS;
+        // Whether the stored data can't be decoded (corrupted or written by a newer version)
+        private boolean unreadable;
+        // The last eligibility bucket checked for the villager and the number of owned trades in it
+        private long[] countedBucket;
+        private int countedOwned;
+
+        private OwnedTrades() {
+        }
+
+        /**
+         * @return The sorted ordinals of the owned trades. <b>Must not be modified.</b>
+         */
+        @NotNull
+        public int[] getOrdinals() {
+            return ordinals;
+        }
+
+        public int size() {
+            return ordinals.length + unknownIdentifiers.length + unknownHashes.length;
+        }
+
+        public boolean contains(int ordinal) {
+            return Arrays.binarySearch(ordinals, ordinal) >= 0;
+        }
+
+        public boolean contains(@NotNull final String ID) {
+            CustomTrade trade = storage.find(ID);
+            if (trade != null)
+                return contains(trade.getOrdinal());
+
+            for (String unknown : unknownIdentifiers)
+                if (unknown.equals(ID))
+                    return true;
+            return false;
+        }
+
+        /**
+         * The owned trades are counted the first time the bucket is checked. Afterwards the count is
+         * kept up to date as trades are added, so checking the same bucket again is O(1).
+         * Buckets are compared by identity, so a rebuilt index is counted again.
+         *
+         * @param bucket The shared bitset of an eligibility bucket of the {@link TradeStorage}.
+         * @return The number of owned trades in the bucket.
+         */
+        int countIn(@NotNull final long[] bucket) {
+            if (bucket != countedBucket) {
+                int count = 0;
+                for (int ordinal : ordinals)
+                    if (Bits.get(bucket, ordinal)) count++;
+                this.countedBucket = bucket;
+                this.countedOwned = count;
+            }
+            return countedOwned;
+        }
+
+        /**
+         * @return The identifiers of the owned trades.
+         * Trades known only by the hash of their identifier aren't included.
+         */
+        @NotNull
+        public List<String> getIdentifiers() {
+            List<String> identifiers = new ArrayList<>(ordinals.length + unknownIdentifiers.length);
+            for (int ordinal : ordinals)
+                identifiers.add(storage.getByOrdinal(ordinal).getID());
+            identifiers.addAll(Arrays.asList(unknownIdentifiers));
+            return identifiers;
+        }
+
+        private void add(@NotNull final String ID) {
+            CustomTrade trade = storage.find(ID);
+            if (trade != null)
+                addOrdinal(trade.getOrdinal());
+            else addUnknown(ID);
+        }
+
+        private void addOrdinal(int ordinal) {
+            int i = Arrays.binarySearch(ordinals, ordinal);
+            if (i >= 0)
+                return;
+
+            i = -(i + 1);
+            int[] grown = new int[ordinals.length + 1];
+            System.arraycopy(ordinals, 0, grown, 0, i);
+            grown[i] = ordinal;
+            System.arraycopy(ordinals, i, grown, i + 1, ordinals.length - i);
+            this.ordinals = grown;
+            if (countedBucket != null && Bits.get(countedBucket, ordinal))
+                countedOwned++;
+        }
+
+        private void addUnknown(@NotNull final String ID) {
+            if (contains(ID))
+                return;
+
+            String[] grown = Arrays.copyOf(unknownIdentifiers, unknownIdentifiers.length + 1);
+            grown[unknownIdentifiers.length] = ID;
+            this.unknownIdentifiers = grown;
+        }
+
+        private void addUnknownHash(int hash) {
+            for (int unknown : unknownHashes)
+                if (unknown == hash)
+                    return;
+
+            int[] grown = Arrays.copyOf(unknownHashes, unknownHashes.length + 1);
+            grown[unknownHashes.length] = hash;
+            this.unknownHashes = grown;
+        }
+    }
+}